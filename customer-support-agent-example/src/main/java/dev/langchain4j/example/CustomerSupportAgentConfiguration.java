@@ -5,6 +5,9 @@ import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.parser.TextDocumentParser;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.example.embedding.CachingEmbeddingModel;
+import dev.langchain4j.example.store.MappedEmbeddingStore;
+import dev.langchain4j.example.store.QuantizedEmbeddingStore;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.memory.chat.TokenWindowChatMemory;
 import dev.langchain4j.model.TokenCountEstimator;
@@ -15,13 +18,15 @@ import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 
 import java.io.IOException;
+import java.nio.file.Path;
 
 import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.loadDocument;
 import static dev.langchain4j.model.openai.OpenAiChatModelName.GPT_4_O_MINI;
@@ -52,6 +57,7 @@ public class CustomerSupportAgentConfiguration {
      * 嵌入模型
      */
     @Bean
+    @Primary
     EmbeddingModel embeddingModel() {
         // Not the best embedding model, but good enough for this demo
         return new AllMiniLmL6V2EmbeddingModel();
@@ -62,12 +68,22 @@ public class CustomerSupportAgentConfiguration {
      * @param embeddingModel 嵌入模型
      * @param resourceLoader 资源加载器
      * @param tokenizer 词元计数估算器
+     * @param type 嵌入存储类型：mapped 或 quantized
+     * @param directory 嵌入存储目录
+     * @param searchParallelism 搜索并行度
+     * @param calibrationSize 量化存储的校准向量数
+     * @param rescoreTopN 量化存储用原始向量重新评分的候选数
      */
     @Bean
     EmbeddingStore<TextSegment> embeddingStore(
             EmbeddingModel embeddingModel,
             ResourceLoader resourceLoader,
-            TokenCountEstimator tokenizer
+            TokenCountEstimator tokenizer,
+            @Value("${embedding-store.type}") String type,
+            @Value("${embedding-store.directory}") String directory,
+            @Value("${embedding-store.search-parallelism}") int searchParallelism,
+            @Value("${embedding-store.quantized.calibration-size}") int calibrationSize,
+            @Value("${embedding-store.quantized.rescore-top-n}") int rescoreTopN
     ) throws IOException {
 
         // 通常，你的数据嵌入存储已经填充了你的数据。
@@ -75,9 +91,33 @@ public class CustomerSupportAgentConfiguration {
         // Normally, you would already have your embedding store filled with your data.
         // However, for the purpose of this demonstration, we will:
 
-        // 1. 创建内存中的嵌入存储
-        // 1. Create an in-memory embedding store
-        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        // 1. 创建嵌入存储
+        // 1. Create an embedding store
+        EmbeddingStore<TextSegment> embeddingStore;
+        switch (type) {
+            case "mapped" -> {
+                // 基于内存映射文件的嵌入存储。如果之前已经导入过文档，只需映射文件即可，无需重新嵌入
+                // An embedding store backed by memory-mapped files.
+                // If the document was already ingested by a previous run, the files are just mapped, nothing is re-embedded
+                // 大型语料库会被分区并在多个核心上并行搜索
+                // Large corpora are partitioned and searched on several cores in parallel
+                MappedEmbeddingStore mappedEmbeddingStore = new MappedEmbeddingStore(Path.of(directory), searchParallelism);
+                if (!mappedEmbeddingStore.isEmpty()) {
+                    return mappedEmbeddingStore;
+                }
+                embeddingStore = mappedEmbeddingStore;
+            }
+            case "quantized" -> {
+                // int8 量化的内存嵌入存储，向量内存约为 float 的四分之一，每次启动都会重新导入
+                // An in-memory int8 quantized embedding store: vectors need about a quarter of the memory of floats,
+                // but the document is ingested again on every start
+                embeddingStore = QuantizedEmbeddingStore.builder()
+                        .calibrationSize(calibrationSize)
+                        .rescoreTopN(rescoreTopN)
+                        .build();
+            }
+            default -> throw new IllegalArgumentException("Unknown embedding-store.type: " + type);
+        }
 
         // 2. 加载示例文档（《Miles of Smiles》使用条款）
         // 2. Load an example document ("Miles of Smiles" terms of use)
@@ -108,15 +148,31 @@ public class CustomerSupportAgentConfiguration {
         return embeddingStore;
     }
 
+    /**
+     * 带缓存的查询嵌入模型，可以注入它来读取缓存统计信息
+     * @param embeddingModel 嵌入模型
+     * @param cacheMaxSizeBytes 查询嵌入缓存的最大字节数
+     */
+    @Bean
+    CachingEmbeddingModel queryEmbeddingModel(
+            EmbeddingModel embeddingModel,
+            @Value("${embedding-cache.max-size-bytes}") long cacheMaxSizeBytes
+    ) {
+        // 重复的问题直接使用缓存的查询嵌入，无需再次运行模型。只缓存查询，文档导入不经过该缓存
+        // Repeated questions reuse the cached query embedding instead of running the model again.
+        // Only queries are cached, document ingestion uses the primary embedding model
+        return new CachingEmbeddingModel(embeddingModel, cacheMaxSizeBytes);
+    }
+
     /**
      * 内容检索器
      * @param embeddingStore 文本片段的嵌入存储
-     * @param embeddingModel 嵌入模型
+     * @param queryEmbeddingModel 带缓存的查询嵌入模型
      */
     @Bean
     ContentRetriever contentRetriever(
             EmbeddingStore<TextSegment> embeddingStore,
-            EmbeddingModel embeddingModel
+            CachingEmbeddingModel queryEmbeddingModel
     ) {
 
         // 您需要调整这些参数以找到最佳设置，这将取决于多个因素，例如：
@@ -132,7 +188,7 @@ public class CustomerSupportAgentConfiguration {
         // 嵌入存储的内容检索器
         return EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(embeddingStore)
-                .embeddingModel(embeddingModel)
+                .embeddingModel(queryEmbeddingModel)
                 .maxResults(maxResults)
                 .minScore(minScore)
                 .build();
@@ -0,0 +1,165 @@
+package dev.langchain4j.example.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import static dev.langchain4j.internal.ValidationUtils.ensureBetween;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 带缓存的嵌入模型装饰器
+ * An {@link EmbeddingModel} decorator that caches embeddings of recently seen texts, so that repeated
+ * questions ("When can I cancel my booking?") are not run through the model again.
+ * <br>
+ * Texts are normalized (trimmed, whitespace collapsed) and keyed by their SHA-256 hash, so the cache does
+ * not hold the texts themselves. The cache is an LRU bounded by an approximate size in bytes rather than
+ * by the number of entries. Hits, misses and evictions are counted, see {@link #stats()}.
+ * <br>
+ * Only texts are part of the key: embeddings do not depend on the metadata of a {@link TextSegment}.
+ * <br>
+ * The vector of an {@link Embedding} is mutable, so the cache keeps its own copy and every caller gets a new one.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * 每个缓存项除向量外的大致开销（键、哈希表节点、对象头）
+     * Approximate overhead of one entry besides the vector: key, map node and object headers
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final EmbeddingModel delegate;
+    private final long maxSizeBytes;
+
+    private final LinkedHashMap<ByteBuffer, Embedding> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, long maxSizeBytes) {
+        this.delegate = ensureNotNull(delegate, "delegate");
+        this.maxSizeBytes = ensureBetween(maxSizeBytes, 1, Long.MAX_VALUE, "maxSizeBytes");
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        Embedding[] embeddings = new Embedding[textSegments.size()];
+        ByteBuffer[] keys = new ByteBuffer[textSegments.size()];
+        List<TextSegment> missed = new ArrayList<>();
+        List<Integer> missedIndexes = new ArrayList<>();
+
+        for (int i = 0; i < textSegments.size(); i++) {
+            keys[i] = key(textSegments.get(i).text());
+        }
+        synchronized (cache) {
+            for (int i = 0; i < textSegments.size(); i++) {
+                Embedding cached = cache.get(keys[i]);
+                if (cached == null) {
+                    missed.add(textSegments.get(i));
+                    missedIndexes.add(i);
+                } else {
+                    embeddings[i] = copy(cached);
+                }
+            }
+        }
+        hits.add(textSegments.size() - missed.size());
+        misses.add(missed.size());
+        if (missed.isEmpty()) {
+            return Response.from(Arrays.asList(embeddings));
+        }
+
+        // 只对未命中的文本调用模型
+        // Only the texts that missed the cache are sent to the model
+        Response<List<Embedding>> response = delegate.embedAll(missed);
+        synchronized (cache) {
+            for (int i = 0; i < missed.size(); i++) {
+                int index = missedIndexes.get(i);
+                embeddings[index] = response.content().get(i);
+                put(keys[index], copy(embeddings[index]));
+            }
+        }
+        return Response.from(Arrays.asList(embeddings), response.tokenUsage(), response.finishReason(), response.metadata());
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    /**
+     * 当前的缓存统计信息
+     * A snapshot of the cache statistics
+     */
+    public Stats stats() {
+        synchronized (cache) {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), cache.size(), sizeBytes);
+        }
+    }
+
+    private void put(ByteBuffer key, Embedding embedding) {
+        Embedding previous = cache.put(key, embedding);
+        if (previous != null) {
+            sizeBytes -= weight(previous);
+        }
+        sizeBytes += weight(embedding);
+
+        Iterator<Embedding> leastRecentlyUsed = cache.values().iterator();
+        while (sizeBytes > maxSizeBytes && leastRecentlyUsed.hasNext()) {
+            sizeBytes -= weight(leastRecentlyUsed.next());
+            leastRecentlyUsed.remove();
+            evictions.increment();
+        }
+    }
+
+    private static Embedding copy(Embedding embedding) {
+        return Embedding.from(embedding.vector().clone());
+    }
+
+    private static long weight(Embedding embedding) {
+        return (long) embedding.dimension() * Float.BYTES + ENTRY_OVERHEAD_BYTES;
+    }
+
+    private static ByteBuffer key(String text) {
+        String normalized = WHITESPACE.matcher(text.trim()).replaceAll(" ");
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     * Cache statistics
+     *
+     * @param hits      number of texts served from the cache
+     * @param misses    number of texts sent to the model
+     * @param evictions number of entries evicted to stay within the size limit
+     * @param entries   number of cached embeddings
+     * @param sizeBytes approximate size of the cached embeddings in bytes
+     */
+    public record Stats(long hits, long misses, long evictions, int entries, long sizeBytes) {
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+}
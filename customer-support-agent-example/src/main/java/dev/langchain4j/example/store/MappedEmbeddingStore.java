@@ -0,0 +1,591 @@
+package dev.langchain4j.example.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import static dev.langchain4j.internal.Utils.randomUUID;
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 基于内存映射文件的持久化嵌入存储
+ * A persistent {@link EmbeddingStore} that keeps float32 vectors in a memory-mapped file
+ * and the embedded {@link TextSegment}s in a separate memory-mapped data file.
+ * <br>
+ * Vectors are never materialized as {@link Embedding} objects on the Java heap (except for returned matches),
+ * and opening an existing store only maps its files, so startup time does not depend on the corpus size.
+ * <br>
+ * The store directory contains three files:
+ * <ul>
+ *     <li>{@code index.bin} - a header (dimension, entry count, data size) followed by one data offset per entry;
+ *     removed entries are marked with a negative offset</li>
+ *     <li>{@code vectors.bin} - the vectors, stored contiguously as little-endian float32</li>
+ *     <li>{@code segments.bin} - the ids, texts and metadata of the entries</li>
+ * </ul>
+ * The header is updated last, after all other writes, so a crash in the middle of {@code addAll} leaves the
+ * store in its previous consistent state.
+ * <br>
+ * Search is exact. With a search parallelism greater than 1, large stores are split into partitions that are
+ * scored concurrently, each into its own bounded min-heap, and the heaps are merged into the final result.
+ * Ties are broken by insertion order, so the result does not depend on the number of partitions.
+ */
+public class MappedEmbeddingStore implements EmbeddingStore<TextSegment>, Closeable {
+
+    private static final int MAGIC = 0x4C344A4D; // "L4JM"
+    private static final int VERSION = 1;
+
+    private static final long HEADER_SIZE = 32;
+    private static final long DIMENSION_POSITION = 8;
+    private static final long COUNT_POSITION = 16;
+    private static final long DATA_END_POSITION = 24;
+
+    private static final long INDEX_CHUNK_SIZE = 8L << 20;
+    private static final long DATA_CHUNK_SIZE = 64L << 20;
+    private static final long VECTORS_CHUNK_SIZE = 64L << 20;
+
+    private static final long REMOVED = -1;
+
+    /**
+     * 每个分区的最小条目数，更小的存储不值得并行
+     * Minimum number of entries per partition; smaller stores are not worth a fork
+     */
+    private static final int MIN_PARTITION_SIZE = 4096;
+
+    private static final byte STRING = 0;
+    private static final byte UUID_VALUE = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte FLOAT = 4;
+    private static final byte DOUBLE = 5;
+
+    private final Path directory;
+    private final MappedFile index;
+    private final MappedFile data;
+    private final Executor searchExecutor;
+    private final int searchPartitions;
+    private final boolean ownsSearchExecutor;
+
+    private volatile MappedFile vectors;
+    private volatile int dimension;
+    private volatile int vectorsPerChunk;
+    private volatile int count;
+    private long dataEnd;
+
+    private Map<String, Integer> positionsById;
+
+    /**
+     * 打开（或创建）位于指定目录中的存储。
+     * Opens the store located in the given directory, creating it if it does not exist yet.
+     *
+     * @param directory 存储目录 the directory holding the store files
+     */
+    public MappedEmbeddingStore(Path directory) {
+        this(directory, null, 1, false);
+    }
+
+    /**
+     * 打开（或创建）存储，并使用专用的 {@link ForkJoinPool} 以指定的并行度执行搜索。
+     * Opens (or creates) the store and searches it with the given parallelism on a dedicated {@link ForkJoinPool},
+     * which is shut down when the store is closed.
+     *
+     * @param directory         存储目录 the directory holding the store files
+     * @param searchParallelism 搜索并行度 the number of partitions searched concurrently; 1 searches sequentially
+     */
+    public MappedEmbeddingStore(Path directory, int searchParallelism) {
+        this(directory,
+                searchParallelism > 1 ? new ForkJoinPool(searchParallelism) : null,
+                ensureGreaterThanZero(searchParallelism, "searchParallelism"),
+                searchParallelism > 1);
+    }
+
+    /**
+     * 打开（或创建）存储，并在给定的执行器上并行搜索各分区。执行器由调用方管理。
+     * Opens (or creates) the store and searches up to {@code searchPartitions} partitions concurrently
+     * on the given executor, which stays owned by the caller.
+     *
+     * @param directory        存储目录 the directory holding the store files
+     * @param searchExecutor   执行器 the executor running the partition scans
+     * @param searchPartitions 分区数 the maximum number of partitions per search
+     */
+    public MappedEmbeddingStore(Path directory, Executor searchExecutor, int searchPartitions) {
+        this(directory, ensureNotNull(searchExecutor, "searchExecutor"),
+                ensureGreaterThanZero(searchPartitions, "searchPartitions"), false);
+    }
+
+    private MappedEmbeddingStore(Path directory, Executor searchExecutor, int searchPartitions,
+                                 boolean ownsSearchExecutor) {
+        this.directory = ensureNotNull(directory, "directory");
+        this.searchExecutor = searchExecutor;
+        this.searchPartitions = searchPartitions;
+        this.ownsSearchExecutor = ownsSearchExecutor;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.index = new MappedFile(directory.resolve("index.bin"), INDEX_CHUNK_SIZE);
+        this.data = new MappedFile(directory.resolve("segments.bin"), DATA_CHUNK_SIZE);
+
+        index.ensureCapacity(HEADER_SIZE);
+        int magic = index.getInt(0);
+        if (magic == 0) {
+            index.putInt(0, MAGIC);
+            index.putInt(4, VERSION);
+            index.force();
+        } else if (magic != MAGIC || index.getInt(4) != VERSION) {
+            throw new IllegalStateException("Not a supported embedding store: " + directory);
+        }
+
+        this.dataEnd = index.getLong(DATA_END_POSITION);
+        int storedDimension = index.getInt(DIMENSION_POSITION);
+        if (storedDimension > 0) {
+            openVectors(storedDimension);
+        }
+        this.count = (int) index.getLong(COUNT_POSITION);
+    }
+
+    /**
+     * 存储中是否没有任何条目（包括已删除的条目）。
+     * Whether nothing has been added to the store yet, e.g. to decide whether the corpus needs to be ingested.
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = randomUUID();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = randomUUID();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public synchronized void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        ensureTrue(ids.size() == embeddings.size(), "ids and embeddings must have the same size");
+        ensureTrue(textSegments == null || textSegments.size() == embeddings.size(),
+                "textSegments and embeddings must have the same size");
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        if (vectors == null) {
+            openVectors(embeddings.get(0).dimension());
+            index.putInt(DIMENSION_POSITION, dimension);
+        }
+
+        int newCount = count;
+        long newDataEnd = dataEnd;
+        for (int i = 0; i < ids.size(); i++) {
+            float[] vector = embeddings.get(i).vector();
+            ensureTrue(vector.length == dimension,
+                    "embedding dimension " + vector.length + " does not match the store dimension " + dimension);
+
+            byte[] record = serialize(ids.get(i), textSegments == null ? null : textSegments.get(i));
+            data.ensureCapacity(newDataEnd + record.length);
+            data.put(newDataEnd, record);
+
+            long vectorPosition = vectorPosition(newCount);
+            vectors.ensureCapacity(vectorPosition + (long) dimension * Float.BYTES);
+            vectors.putFloats(vectorPosition, vector);
+
+            long entryPosition = entryPosition(newCount);
+            index.ensureCapacity(entryPosition + Long.BYTES);
+            index.putLong(entryPosition, newDataEnd);
+
+            if (positionsById != null) {
+                positionsById.put(ids.get(i), newCount);
+            }
+            newDataEnd += record.length;
+            newCount++;
+        }
+
+        // 先刷写数据，再发布新的条目数量
+        // Flush the data first, then publish the new entry count
+        data.force();
+        vectors.force();
+        index.force();
+        index.putLong(DATA_END_POSITION, newDataEnd);
+        index.putLong(COUNT_POSITION, newCount);
+        index.force();
+
+        dataEnd = newDataEnd;
+        count = newCount;
+    }
+
+    @Override
+    public synchronized void removeAll(Collection<String> ids) {
+        Map<String, Integer> positions = positionsById();
+        for (String id : ids) {
+            Integer position = positions.remove(id);
+            if (position != null) {
+                index.putLong(entryPosition(position), REMOVED);
+            }
+        }
+        index.force();
+    }
+
+    @Override
+    public synchronized void removeAll(Filter filter) {
+        ensureNotNull(filter, "filter");
+        Map<String, Integer> positions = positionsById();
+        for (int i = 0; i < count; i++) {
+            long offset = index.getLong(entryPosition(i));
+            if (offset == REMOVED) {
+                continue;
+            }
+            Entry entry = readEntry(offset);
+            if (entry.textSegment != null && filter.test(entry.textSegment.metadata())) {
+                index.putLong(entryPosition(i), REMOVED);
+                positions.remove(entry.id);
+            }
+        }
+        index.force();
+    }
+
+    @Override
+    public synchronized void removeAll() {
+        index.putLong(COUNT_POSITION, 0);
+        index.putLong(DATA_END_POSITION, 0);
+        index.force();
+        count = 0;
+        dataEnd = 0;
+        positionsById = null;
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        int entries = count;
+        if (entries == 0) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+
+        float[] query = request.queryEmbedding().vector();
+        ensureTrue(query.length == dimension, "query embedding dimension does not match the store dimension");
+        double queryNorm = norm(query);
+
+        int partitions = searchExecutor == null ? 1 : Math.min(searchPartitions, entries / MIN_PARTITION_SIZE);
+        PriorityQueue<ScoredPosition> topK;
+        if (partitions <= 1) {
+            topK = topK(query, queryNorm, request, 0, entries);
+        } else {
+            List<CompletableFuture<PriorityQueue<ScoredPosition>>> futures = new ArrayList<>(partitions);
+            for (int partition = 0; partition < partitions; partition++) {
+                int from = (int) ((long) entries * partition / partitions);
+                int to = (int) ((long) entries * (partition + 1) / partitions);
+                futures.add(CompletableFuture.supplyAsync(
+                        () -> topK(query, queryNorm, request, from, to), searchExecutor));
+            }
+            topK = new PriorityQueue<>(ScoredPosition.WORST_FIRST);
+            for (CompletableFuture<PriorityQueue<ScoredPosition>> future : futures) {
+                for (ScoredPosition scored : future.join()) {
+                    offer(topK, scored, request.maxResults());
+                }
+            }
+        }
+
+        List<ScoredPosition> sorted = new ArrayList<>(topK);
+        sorted.sort(ScoredPosition.WORST_FIRST.reversed());
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(sorted.size());
+        for (ScoredPosition scored : sorted) {
+            Entry entry = readEntry(scored.offset());
+            matches.add(new EmbeddingMatch<>(scored.score(), entry.id, readVector(scored.position()), entry.textSegment));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    /**
+     * 对 [from, to) 范围内的条目打分，返回其中最好的 maxResults 个（最小堆）。
+     * Scores the entries in {@code [from, to)} and returns the best {@code maxResults} of them as a min-heap.
+     */
+    private PriorityQueue<ScoredPosition> topK(float[] query, double queryNorm, EmbeddingSearchRequest request,
+                                               int from, int to) {
+        Filter filter = request.filter();
+        PriorityQueue<ScoredPosition> topK = new PriorityQueue<>(ScoredPosition.WORST_FIRST);
+        for (int i = from; i < to; i++) {
+            long offset = index.getLong(entryPosition(i));
+            if (offset == REMOVED) {
+                continue;
+            }
+            double score = RelevanceScore.fromCosineSimilarity(cosineSimilarity(query, queryNorm, i));
+            if (score < request.minScore()) {
+                continue;
+            }
+            ScoredPosition scored = new ScoredPosition(i, offset, score);
+            if (topK.size() == request.maxResults()
+                    && ScoredPosition.WORST_FIRST.compare(scored, topK.peek()) <= 0) {
+                continue;
+            }
+            if (filter != null) {
+                TextSegment textSegment = readEntry(offset).textSegment;
+                if (textSegment == null || !filter.test(textSegment.metadata())) {
+                    continue;
+                }
+            }
+            offer(topK, scored, request.maxResults());
+        }
+        return topK;
+    }
+
+    private static void offer(PriorityQueue<ScoredPosition> topK, ScoredPosition scored, int maxResults) {
+        topK.add(scored);
+        if (topK.size() > maxResults) {
+            topK.poll();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (ownsSearchExecutor) {
+            ((ExecutorService) searchExecutor).shutdown();
+        }
+        index.close();
+        data.close();
+        if (vectors != null) {
+            vectors.close();
+        }
+    }
+
+    private void openVectors(int dimension) {
+        long stride = (long) dimension * Float.BYTES;
+        this.vectorsPerChunk = (int) Math.max(1, VECTORS_CHUNK_SIZE / stride);
+        this.dimension = dimension;
+        this.vectors = new MappedFile(directory.resolve("vectors.bin"), vectorsPerChunk * stride);
+    }
+
+    private long vectorPosition(int position) {
+        long chunkSize = vectors.chunkSize();
+        return (position / vectorsPerChunk) * chunkSize
+                + (long) (position % vectorsPerChunk) * dimension * Float.BYTES;
+    }
+
+    private static long entryPosition(int position) {
+        return HEADER_SIZE + (long) position * Long.BYTES;
+    }
+
+    private double cosineSimilarity(float[] query, double queryNorm, int position) {
+        FloatBuffer floats = vectors.floats(position / vectorsPerChunk);
+        int base = (position % vectorsPerChunk) * dimension;
+        double dot = 0;
+        double norm = 0;
+        for (int i = 0; i < query.length; i++) {
+            float value = floats.get(base + i);
+            dot += query[i] * value;
+            norm += value * value;
+        }
+        double denominator = queryNorm * Math.sqrt(norm);
+        return denominator == 0 ? 0 : dot / denominator;
+    }
+
+    private Embedding readVector(int position) {
+        FloatBuffer floats = vectors.floats(position / vectorsPerChunk);
+        int base = (position % vectorsPerChunk) * dimension;
+        float[] vector = new float[dimension];
+        floats.get(base, vector);
+        return Embedding.from(vector);
+    }
+
+    private static double norm(float[] vector) {
+        double sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        return Math.sqrt(sum);
+    }
+
+    private Map<String, Integer> positionsById() {
+        // 只有删除时才需要 id 索引，按需构建以保持启动为 O(1)
+        // The id lookup is only needed for removals, so it is built lazily to keep startup O(1)
+        if (positionsById == null) {
+            Map<String, Integer> positions = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                long offset = index.getLong(entryPosition(i));
+                if (offset != REMOVED) {
+                    positions.put(readEntry(offset).id, i);
+                }
+            }
+            positionsById = positions;
+        }
+        return positionsById;
+    }
+
+    private static byte[] serialize(String id, TextSegment textSegment) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0); // record length, patched below
+            writeString(out, id);
+            if (textSegment == null) {
+                out.writeInt(-1);
+            } else {
+                writeString(out, textSegment.text());
+                Map<String, Object> metadata = textSegment.metadata().toMap();
+                out.writeInt(metadata.size());
+                for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+                    writeString(out, entry.getKey());
+                    writeValue(out, entry.getValue());
+                }
+            }
+            out.flush();
+            byte[] record = bytes.toByteArray();
+            int length = record.length;
+            record[0] = (byte) (length >>> 24);
+            record[1] = (byte) (length >>> 16);
+            record[2] = (byte) (length >>> 8);
+            record[3] = (byte) length;
+            return record;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Entry readEntry(long offset) {
+        byte[] lengthBytes = new byte[Integer.BYTES];
+        data.get(offset, lengthBytes);
+        int length = ((lengthBytes[0] & 0xFF) << 24) | ((lengthBytes[1] & 0xFF) << 16)
+                | ((lengthBytes[2] & 0xFF) << 8) | (lengthBytes[3] & 0xFF);
+        byte[] record = new byte[length - Integer.BYTES];
+        data.get(offset + Integer.BYTES, record);
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            String id = readString(in);
+            int textLength = in.readInt();
+            if (textLength < 0) {
+                return new Entry(id, null);
+            }
+            String text = readString(in, textLength);
+            int metadataSize = in.readInt();
+            Map<String, Object> metadata = new HashMap<>(metadataSize * 2);
+            for (int i = 0; i < metadataSize; i++) {
+                metadata.put(readString(in), readValue(in));
+            }
+            return new Entry(id, TextSegment.from(text, Metadata.from(metadata)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return readString(in, in.readInt());
+    }
+
+    private static String readString(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof String string) {
+            out.writeByte(STRING);
+            writeString(out, string);
+        } else if (value instanceof UUID uuid) {
+            out.writeByte(UUID_VALUE);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else if (value instanceof Integer integer) {
+            out.writeByte(INTEGER);
+            out.writeInt(integer);
+        } else if (value instanceof Long longValue) {
+            out.writeByte(LONG);
+            out.writeLong(longValue);
+        } else if (value instanceof Float floatValue) {
+            out.writeByte(FLOAT);
+            out.writeFloat(floatValue);
+        } else if (value instanceof Double doubleValue) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(doubleValue);
+        } else {
+            throw new IllegalArgumentException("Unsupported metadata value type: " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case STRING -> readString(in);
+            case UUID_VALUE -> new UUID(in.readLong(), in.readLong());
+            case INTEGER -> in.readInt();
+            case LONG -> in.readLong();
+            case FLOAT -> in.readFloat();
+            case DOUBLE -> in.readDouble();
+            default -> throw new IllegalStateException("Unknown metadata value type: " + type);
+        };
+    }
+
+    private record Entry(String id, TextSegment textSegment) {
+    }
+
+    private record ScoredPosition(int position, long offset, double score) {
+
+        /**
+         * 分数低者在前；分数相同时，后插入的在前，因此最终结果与分区数量无关。
+         * Lower scores first; on equal scores the later entry comes first,
+         * which makes the result independent of the number of partitions.
+         */
+        static final Comparator<ScoredPosition> WORST_FIRST = Comparator
+                .comparingDouble(ScoredPosition::score)
+                .thenComparing(Comparator.comparingInt(ScoredPosition::position).reversed());
+    }
+}
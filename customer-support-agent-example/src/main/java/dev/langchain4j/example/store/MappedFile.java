@@ -0,0 +1,163 @@
+package dev.langchain4j.example.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * 按固定大小分块映射到内存的文件
+ * A file mapped into memory in fixed-size chunks, so that it can grow past the 2 GiB limit of a single
+ * {@link MappedByteBuffer}. The mapped pages live outside of the Java heap and are managed by the OS page cache.
+ * <br>
+ * Values read with the typed accessors ({@link #getInt(long)}, {@link #getLong(long)}, {@link #floats(int)})
+ * must not straddle a chunk boundary; callers choose a chunk size that is a multiple of their record stride.
+ * Byte ranges ({@link #get(long, byte[])}, {@link #put(long, byte[])}) may span chunks.
+ */
+final class MappedFile implements Closeable {
+
+    private final FileChannel channel;
+    private final long chunkSize;
+
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    private volatile FloatBuffer[] floatChunks = new FloatBuffer[0];
+
+    MappedFile(Path path, long chunkSize) {
+        if (chunkSize <= 0 || chunkSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("chunkSize must be in (0, " + Integer.MAX_VALUE + "], but is " + chunkSize);
+        }
+        try {
+            this.channel = FileChannel.open(path, READ, WRITE, CREATE);
+            this.chunkSize = chunkSize;
+            ensureCapacity(channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    long chunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * 确保至少映射了 {@code capacity} 字节，必要时扩展文件。
+     * Makes sure at least {@code capacity} bytes are mapped, extending the file if needed.
+     */
+    synchronized void ensureCapacity(long capacity) {
+        int required = (int) ((capacity + chunkSize - 1) / chunkSize);
+        MappedByteBuffer[] current = chunks;
+        if (required <= current.length) {
+            return;
+        }
+        MappedByteBuffer[] grown = Arrays.copyOf(current, required);
+        FloatBuffer[] grownFloats = Arrays.copyOf(floatChunks, required);
+        try {
+            for (int i = current.length; i < required; i++) {
+                grown[i] = channel.map(READ_WRITE, i * chunkSize, chunkSize);
+                grown[i].order(ByteOrder.LITTLE_ENDIAN);
+                grownFloats[i] = grown[i].asFloatBuffer();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        floatChunks = grownFloats;
+        chunks = grown;
+    }
+
+    int getInt(long position) {
+        return chunk(position).getInt(offset(position));
+    }
+
+    void putInt(long position, int value) {
+        chunk(position).putInt(offset(position), value);
+    }
+
+    long getLong(long position) {
+        return chunk(position).getLong(offset(position));
+    }
+
+    void putLong(long position, long value) {
+        chunk(position).putLong(offset(position), value);
+    }
+
+    /**
+     * 第 {@code chunk} 块的 float 视图，用于对连续向量进行高效扫描。
+     * A float view over the given chunk, used to scan contiguous vectors without copying them onto the heap.
+     */
+    FloatBuffer floats(int chunk) {
+        return floatChunks[chunk];
+    }
+
+    void putFloats(long position, float[] values) {
+        FloatBuffer floats = floatChunks[(int) (position / chunkSize)];
+        int index = offset(position) / Float.BYTES;
+        for (int i = 0; i < values.length; i++) {
+            floats.put(index + i, values[i]);
+        }
+    }
+
+    void get(long position, byte[] destination) {
+        int copied = 0;
+        while (copied < destination.length) {
+            long current = position + copied;
+            ByteBuffer chunk = chunk(current).duplicate();
+            int offset = offset(current);
+            int length = (int) Math.min(destination.length - copied, chunkSize - offset);
+            chunk.position(offset);
+            chunk.get(destination, copied, length);
+            copied += length;
+        }
+    }
+
+    void put(long position, byte[] source) {
+        int copied = 0;
+        while (copied < source.length) {
+            long current = position + copied;
+            ByteBuffer chunk = chunk(current).duplicate();
+            int offset = offset(current);
+            int length = (int) Math.min(source.length - copied, chunkSize - offset);
+            chunk.position(offset);
+            chunk.put(source, copied, length);
+            copied += length;
+        }
+    }
+
+    /**
+     * 将修改刷写到磁盘。
+     * Flushes modified pages to the storage device.
+     */
+    void force() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ByteBuffer chunk(long position) {
+        return chunks[(int) (position / chunkSize)];
+    }
+
+    private int offset(long position) {
+        return (int) (position % chunkSize);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.demo;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+
+/**
+ * Collects single-text {@link #embed(String)} calls from concurrent callers into micro-batches,
+ * so that the delegate gets one {@link EmbeddingModel#embedAll(List)} call instead of many single calls.
+ * <p>
+ * The in-process ONNX models still encode every text of a batch separately: {@code embedAll} fans the texts out
+ * onto the model's executor, which is sized to the available processors. So the benefit is that concurrent
+ * requests are encoded by that bounded executor instead of each on its own request thread, which otherwise
+ * oversubscribes the CPU under load. The price is up to {@code maxDelay} of added latency per request.
+ * <p>
+ * A batch is sent to the delegate's {@link EmbeddingModel#embedAll(List)} as soon as it holds
+ * {@code maxBatchSize} texts, or {@code maxDelay} after its first text arrived, whichever comes first.
+ * So a lone request waits at most {@code maxDelay}, while under load batches fill up without waiting.
+ * {@link #embedAll(List)} is already a batch and goes straight to the delegate.
+ */
+public class MicroBatchingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegate;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+
+    private final BlockingQueue<PendingEmbedding> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    public MicroBatchingEmbeddingModel(EmbeddingModel delegate, int maxBatchSize, Duration maxDelay) {
+        this.delegate = ensureNotNull(delegate, "delegate");
+        this.maxBatchSize = ensureGreaterThanZero(maxBatchSize, "maxBatchSize");
+        this.maxDelayNanos = ensureNotNull(maxDelay, "maxDelay").toNanos();
+        this.worker = new Thread(this::run, "embedding-micro-batcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        return embed(TextSegment.from(text));
+    }
+
+    @Override
+    public Response<Embedding> embed(TextSegment textSegment) {
+        try {
+            return Response.from(embedAsync(textSegment).join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Queues the text for the next batch; the future completes when that batch has been embedded.
+     */
+    public CompletableFuture<Embedding> embedAsync(TextSegment textSegment) {
+        ensureNotNull(textSegment, "textSegment");
+        if (closed) {
+            throw new IllegalStateException("MicroBatchingEmbeddingModel is closed", failure);
+        }
+        PendingEmbedding pending = new PendingEmbedding(textSegment, new CompletableFuture<>());
+        queue.add(pending);
+        if (closed && queue.remove(pending)) {
+            // closed concurrently, after the worker failed the remaining requests
+            pending.future().completeExceptionally(closedException());
+        }
+        return pending.future();
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        return delegate.embedAll(textSegments);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+    }
+
+    private void run() {
+        List<PendingEmbedding> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!closed) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    // take what is already queued without waiting, then wait for more until the deadline
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() == maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingEmbedding next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                embed(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // fail whatever is left, so that no caller waits forever
+        closed = true;
+        queue.drainTo(batch);
+        batch.forEach(pending -> pending.future().completeExceptionally(closedException()));
+    }
+
+    private CancellationException closedException() {
+        CancellationException exception = new CancellationException("MicroBatchingEmbeddingModel is closed");
+        if (failure != null) {
+            exception.initCause(failure);
+        }
+        return exception;
+    }
+
+    private void embed(List<PendingEmbedding> batch) {
+        try {
+            List<Embedding> embeddings = delegate.embedAll(batch.stream().map(PendingEmbedding::textSegment).toList())
+                    .content();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete(embeddings.get(i));
+            }
+        } catch (Throwable t) {
+            batch.forEach(pending -> pending.future().completeExceptionally(t));
+            if (t instanceof Error) {
+                // the delegate is unusable (e.g. out of memory, or the model failed to load): stop taking requests
+                failure = t;
+                closed = true;
+            }
+        }
+    }
+
+    private record PendingEmbedding(TextSegment textSegment, CompletableFuture<Embedding> future) {
+    }
+}
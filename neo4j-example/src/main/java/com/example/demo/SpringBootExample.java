@@ -1,10 +1,13 @@
 package com.example.demo;
 
 import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 
+import java.time.Duration;
+
 /**
  * NOTE:
  * This example assumes we have a Neo4j instance with Bolt URI bolt://localhost:7687, username 'neo4j' and password 'pass1234'
@@ -24,9 +27,15 @@ public class SpringBootExample {
         SpringApplication.run(SpringBootExample.class, args);
     }
 
-    @Bean
-    public AllMiniLmL6V2EmbeddingModel embeddingModel() {
-        return new AllMiniLmL6V2EmbeddingModel();
+    /**
+     * Concurrent requests to the controller are embedded in micro-batches instead of one by one
+     */
+    @Bean(destroyMethod = "close")
+    public MicroBatchingEmbeddingModel embeddingModel(
+            @Value("${embedding.batch.max-size}") int maxBatchSize,
+            @Value("${embedding.batch.max-delay}") Duration maxDelay
+    ) {
+        return new MicroBatchingEmbeddingModel(new AllMiniLmL6V2EmbeddingModel(), maxBatchSize, maxDelay);
     }
     
 }
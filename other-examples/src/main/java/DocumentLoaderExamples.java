@@ -1,5 +1,9 @@
 import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import document.loader.PagedPdfDocumentLoader;
+import document.loader.ParallelDocumentLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,7 +13,9 @@ import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.*;
 
@@ -22,6 +28,8 @@ public class DocumentLoaderExamples {
         loadMultipleDocuments();
         loadMultipleDocumentsWithGlob();
         loadMultipleDocumentsRecursively();
+        loadMultipleDocumentsInParallel();
+        loadPdfPageByPage();
         loadUsingParserFromSPI();
     }
 
@@ -58,6 +66,36 @@ public class DocumentLoaderExamples {
         log.info("");
     }
 
+    private static void loadMultipleDocumentsInParallel() {
+        Path directoryPath = toPath("example-files/");
+        PathMatcher pathMatcher = FileSystems.getDefault().getPathMatcher("glob:**");
+        log.info("Loading multiple documents recursively and in parallel from: {}", directoryPath);
+        ParallelDocumentLoader loader = ParallelDocumentLoader.builder()
+                .documentParser(ApacheTikaDocumentParser::new) // a new parser for every file
+                .threads(4)
+                .maxFileSizeBytes(10 * 1024 * 1024)
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        try (Stream<Document> documents = loader.load(directoryPath, pathMatcher)) {
+            documents.forEach(DocumentLoaderExamples::log);
+        }
+        log.info("");
+    }
+
+    private static void loadPdfPageByPage() {
+        Path documentPath = toPath("example-files/story-about-happy-carrot.pdf");
+        log.info("Loading PDF page by page: {}", documentPath);
+        DocumentSplitter splitter = DocumentSplitters.recursive(300, 0);
+        try (Stream<Document> pages = new PagedPdfDocumentLoader().load(documentPath)) {
+            // each page is split as soon as it is extracted, the text of the whole file is never in memory
+            pages.forEach(page -> log.info("page {} of {}: {} segments",
+                    page.metadata().getInteger(PagedPdfDocumentLoader.START_PAGE),
+                    page.metadata().getInteger(PagedPdfDocumentLoader.PAGE_COUNT),
+                    splitter.split(page).size()));
+        }
+        log.info("");
+    }
+
     private static void loadUsingParserFromSPI() {
         Path documentPath = toPath("example-files/story-about-happy-carrot.pdf");
         log.info("Loading using parser imported through SPI: {}", documentPath);
@@ -54,6 +54,8 @@ public class ServiceWithPersistentMemoryExample {
     }
 
     // You can create your own implementation of ChatMemoryStore and store chat memory whenever you'd like
+    // This one rewrites the whole message list on every update; for long conversations,
+    // see memory.store.LogStructuredChatMemoryStore, which only appends what changed
     static class PersistentChatMemoryStore implements ChatMemoryStore {
 
         private final DB db = DBMaker.fileDB("chat-memory.db").transactionEnable().make();
@@ -78,6 +78,9 @@ public class ServiceWithPersistentMemoryForEachUserExample {
      * 您可以创建自己的 ChatMemoryStore 实现，并在任何您想要的时候存储聊天记录。
      */
     // You can create your own implementation of ChatMemoryStore and store chat memory whenever you'd like
+    // This one rewrites the whole message list on every update; for long conversations,
+    // see memory.store.LogStructuredChatMemoryStore, which only appends what changed.
+    // With many users, memory.store.GroupCommitChatMemoryStore shares one commit between their updates
     static class PersistentChatMemoryStore implements ChatMemoryStore {
 
         private final DB db = DBMaker.fileDB("multi-user-chat-memory.db").transactionEnable().make();
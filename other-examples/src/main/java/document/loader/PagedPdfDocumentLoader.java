@@ -0,0 +1,134 @@
+package document.loader;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+
+/**
+ * Loads a PDF as a stream of {@link Document}s of {@code pagesPerDocument} pages each,
+ * instead of one {@link Document} with the text of the whole file.
+ * <p>
+ * The file is read through a buffered random-access reader rather than loaded into memory, and the text
+ * of each chunk is extracted only when the stream reaches it. Splitting and embedding the chunks as they come,
+ * peak memory depends on the size of a chunk, not on the size of the file:
+ * <pre>{@code
+ * try (Stream<Document> pages = new PagedPdfDocumentLoader(10).load(pdf)) {
+ *     pages.forEach(ingestor::ingest);
+ * }
+ * }</pre>
+ * Every document has the {@link Document#FILE_NAME} and {@link Document#ABSOLUTE_DIRECTORY_PATH} metadata
+ * of {@link dev.langchain4j.data.document.loader.FileSystemDocumentLoader}, plus {@code start_page},
+ * {@code end_page} (1-based, inclusive) and {@code page_count}. Chunks without text are skipped.
+ */
+public class PagedPdfDocumentLoader {
+
+    public static final String START_PAGE = "start_page";
+    public static final String END_PAGE = "end_page";
+    public static final String PAGE_COUNT = "page_count";
+
+    private final int pagesPerDocument;
+
+    public PagedPdfDocumentLoader() {
+        this(1);
+    }
+
+    public PagedPdfDocumentLoader(int pagesPerDocument) {
+        this.pagesPerDocument = ensureGreaterThanZero(pagesPerDocument, "pagesPerDocument");
+    }
+
+    /**
+     * Opens the PDF and returns its chunks. The stream must be closed, which closes the file.
+     */
+    public Stream<Document> load(Path file) {
+        PDDocument pdf;
+        try {
+            pdf = Loader.loadPDF(new RandomAccessReadBufferedFile(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Pages pages = new Pages(pdf, file.toAbsolutePath());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(pages::close);
+    }
+
+    private class Pages implements Iterator<Document> {
+
+        private final PDDocument pdf;
+        private final Path file;
+        private final int pageCount;
+        private final PDFTextStripper textStripper = new PDFTextStripper();
+
+        private int nextPage = 1;
+        private Document next;
+
+        Pages(PDDocument pdf, Path file) {
+            this.pdf = pdf;
+            this.file = file;
+            this.pageCount = pdf.getNumberOfPages();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && nextPage <= pageCount) {
+                int startPage = nextPage;
+                int endPage = Math.min(startPage + pagesPerDocument - 1, pageCount);
+                nextPage = endPage + 1;
+
+                String text = extractText(startPage, endPage);
+                if (!text.isBlank()) {
+                    Metadata metadata = new Metadata()
+                            .put(Document.FILE_NAME, file.getFileName().toString())
+                            .put(Document.ABSOLUTE_DIRECTORY_PATH, file.getParent().toString())
+                            .put(START_PAGE, startPage)
+                            .put(END_PAGE, endPage)
+                            .put(PAGE_COUNT, pageCount);
+                    next = Document.from(text, metadata);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Document next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Document document = next;
+            next = null;
+            return document;
+        }
+
+        private String extractText(int startPage, int endPage) {
+            textStripper.setStartPage(startPage);
+            textStripper.setEndPage(endPage);
+            try {
+                return textStripper.getText(pdf);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void close() {
+            try {
+                pdf.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
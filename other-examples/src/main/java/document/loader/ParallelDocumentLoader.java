@@ -0,0 +1,365 @@
+package document.loader;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static dev.langchain4j.internal.ValidationUtils.ensureBetween;
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Loads and parses files on several threads and streams the resulting {@link Document}s,
+ * instead of parsing one file after the other into a {@code List} like {@link FileSystemDocumentLoader}.
+ * <p>
+ * At most {@code threads} files are parsed at the same time, each with its own parser from the
+ * {@code documentParser} supplier, and at most twice as many parsed documents wait for the caller.
+ * Documents are streamed in the order of the files.
+ * <p>
+ * Every file has a budget: files larger than {@code maxFileSizeBytes} are not parsed at all, and parsing that
+ * takes longer than {@code timeout} is abandoned. Such files, and files that fail to parse, are skipped:
+ * they are reported to the {@code skippedFileListener} and, if a {@code quarantineDirectory} is set, moved there
+ * so that the next run does not trip over them again. Quarantined files keep their path relative to the loaded
+ * directory, and never replace a file already in quarantine. A parser that ignores interruption may keep its thread
+ * busy after the timeout, but it no longer counts against {@code threads}.
+ * <pre>{@code
+ * ParallelDocumentLoader loader = ParallelDocumentLoader.builder()
+ *         .documentParser(ApacheTikaDocumentParser::new)
+ *         .threads(8)
+ *         .timeout(Duration.ofSeconds(30))
+ *         .build();
+ *
+ * try (Stream<Document> documents = loader.load(directory, pathMatcher)) {
+ *     documents.forEach(ingestor::ingest);
+ * }
+ * }</pre>
+ */
+public class ParallelDocumentLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelDocumentLoader.class);
+
+    private final Supplier<DocumentParser> documentParser;
+    private final int threads;
+    private final long maxFileSizeBytes;
+    private final Duration timeout;
+    private final Path quarantineDirectory;
+    private final Consumer<SkippedFile> skippedFileListener;
+
+    private ParallelDocumentLoader(Builder builder) {
+        this.documentParser = ensureNotNull(builder.documentParser, "documentParser");
+        this.threads = ensureGreaterThanZero(builder.threads, "threads");
+        this.maxFileSizeBytes = ensureBetween(builder.maxFileSizeBytes, 1, Long.MAX_VALUE, "maxFileSizeBytes");
+        this.timeout = ensureNotNull(builder.timeout, "timeout");
+        ensureTrue(!timeout.isNegative() && !timeout.isZero(), "timeout must be greater than zero, but is: " + timeout);
+        this.quarantineDirectory = builder.quarantineDirectory;
+        this.skippedFileListener = ensureNotNull(builder.skippedFileListener, "skippedFileListener");
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Loads the files in the directory and its subdirectories that match the path matcher.
+     * Like in {@link FileSystemDocumentLoader}, the matcher is applied to paths relative to the directory.
+     * The stream must be closed.
+     */
+    public Stream<Document> load(Path directory, PathMatcher pathMatcher) {
+        Stream<Path> files;
+        try {
+            files = Files.walk(directory)
+                    .filter(Files::isRegularFile)
+                    .filter(file -> pathMatcher.matches(directory.relativize(file)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return load(directory, files);
+    }
+
+    /**
+     * Loads the given files. The stream of files is consumed lazily, as the returned stream is consumed.
+     * The returned stream must be closed.
+     */
+    public Stream<Document> load(Stream<Path> files) {
+        return load(null, files);
+    }
+
+    private Stream<Document> load(Path directory, Stream<Path> files) {
+        Loading loading = new Loading(directory, files.iterator());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(loading, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(loading::close)
+                .onClose(files::close);
+    }
+
+    /**
+     * The state of one {@link #load(Stream)}: the files being parsed, in order.
+     */
+    private class Loading implements Iterator<Document> {
+
+        private final Path directory;
+        private final Iterator<Path> files;
+        private final Deque<Parsing> parsings = new ArrayDeque<>();
+        private final Semaphore permits = new Semaphore(threads);
+        private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "document-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "document-parser-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private Document next;
+
+        Loading(Path directory, Iterator<Path> files) {
+            this.directory = directory;
+            this.files = files;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                fill();
+                Parsing parsing = parsings.poll();
+                if (parsing == null) {
+                    close();
+                    return false;
+                }
+                try {
+                    next = parsing.document().join();
+                } catch (CompletionException e) {
+                    skip(parsing.file(), e.getCause());
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Document next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Document document = next;
+            next = null;
+            return document;
+        }
+
+        /**
+         * Starts parsing files until {@code 2 x threads} parsings are in flight
+         */
+        private void fill() {
+            while (parsings.size() < 2 * threads && files.hasNext()) {
+                Path file = files.next();
+                CompletableFuture<Document> document = new CompletableFuture<>();
+                parsings.add(new Parsing(file, document));
+                try {
+                    long size = Files.size(file);
+                    if (size > maxFileSizeBytes) {
+                        document.completeExceptionally(new FileTooLargeException(size, maxFileSizeBytes));
+                        continue;
+                    }
+                } catch (IOException e) {
+                    document.completeExceptionally(e);
+                    continue;
+                }
+                executor.execute(() -> parse(file, document));
+            }
+        }
+
+        private void parse(Path file, CompletableFuture<Document> document) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                document.completeExceptionally(e);
+                return;
+            }
+            // the permit is released when parsing ends or times out, whichever comes first
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    permits.release();
+                }
+            };
+            // the watchdog only interrupts the worker while it is still parsing this file, under this lock,
+            // so that no interrupt reaches the pooled thread once it has moved on to another file
+            Thread worker = Thread.currentThread();
+            AtomicBoolean parsing = new AtomicBoolean(true);
+            ScheduledFuture<?> timer = watchdog.schedule(() -> {
+                synchronized (parsing) {
+                    if (parsing.get() && document.completeExceptionally(new TimeoutException("Parsing took longer than " + timeout))) {
+                        worker.interrupt();
+                        release.run();
+                    }
+                }
+            }, timeout.toNanos(), NANOSECONDS);
+            try {
+                document.complete(FileSystemDocumentLoader.loadDocument(file, documentParser.get()));
+            } catch (Throwable e) {
+                document.completeExceptionally(e);
+            } finally {
+                timer.cancel(false);
+                release.run();
+                synchronized (parsing) {
+                    parsing.set(false);
+                    // clear an interrupt of the watchdog that came too late, before the thread is reused
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        private void skip(Path file, Throwable cause) {
+            Path quarantinedFile = null;
+            if (quarantineDirectory != null) {
+                try {
+                    quarantinedFile = quarantine(file);
+                } catch (IOException e) {
+                    log.warn("Failed to quarantine {}", file, e);
+                }
+            }
+            skippedFileListener.accept(new SkippedFile(file, cause, quarantinedFile));
+        }
+
+        /**
+         * Moves the file to the quarantine directory, under its path relative to the loaded directory.
+         * A file that is already there is never replaced: the new one gets a numbered name instead.
+         */
+        private Path quarantine(Path file) throws IOException {
+            Path relativePath = directory != null ? directory.relativize(file) : file.getFileName();
+            Path target = quarantineDirectory.resolve(relativePath);
+            Files.createDirectories(target.getParent());
+            String fileName = target.getFileName().toString();
+            int extension = fileName.lastIndexOf('.') > 0 ? fileName.lastIndexOf('.') : fileName.length();
+            for (int copy = 1; ; copy++) {
+                try {
+                    return Files.move(file, target);
+                } catch (FileAlreadyExistsException e) {
+                    target = target.resolveSibling(fileName.substring(0, extension) + " (" + copy + ")" + fileName.substring(extension));
+                }
+            }
+        }
+
+        void close() {
+            parsings.forEach(parsing -> parsing.document().cancel(true));
+            parsings.clear();
+            executor.shutdownNow();
+            watchdog.shutdownNow();
+        }
+    }
+
+    private record Parsing(Path file, CompletableFuture<Document> document) {
+    }
+
+    /**
+     * A file that was not loaded.
+     *
+     * @param file            the file
+     * @param cause           why it was skipped: a {@link FileTooLargeException}, a {@link TimeoutException}
+     *                        or the exception thrown while loading or parsing it
+     * @param quarantinedFile where the file was moved, or {@code null} if it was not moved
+     */
+    public record SkippedFile(Path file, Throwable cause, Path quarantinedFile) {
+    }
+
+    public static class FileTooLargeException extends RuntimeException {
+
+        public FileTooLargeException(long sizeBytes, long maxFileSizeBytes) {
+            super("File has " + sizeBytes + " bytes, the limit is " + maxFileSizeBytes);
+        }
+    }
+
+    public static class Builder {
+
+        private Supplier<DocumentParser> documentParser;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private long maxFileSizeBytes = 100L * 1024 * 1024;
+        private Duration timeout = Duration.ofMinutes(1);
+        private Path quarantineDirectory;
+        private Consumer<SkippedFile> skippedFileListener =
+                skippedFile -> log.warn("Skipped {}", skippedFile.file(), skippedFile.cause());
+
+        /**
+         * Creates the parsers. It is called for every file, so parsers do not need to be thread-safe.
+         */
+        public Builder documentParser(Supplier<DocumentParser> documentParser) {
+            this.documentParser = documentParser;
+            return this;
+        }
+
+        /**
+         * Maximum number of files parsed at the same time. Defaults to the number of available processors.
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Larger files are skipped without being read. Defaults to 100 MB.
+         */
+        public Builder maxFileSizeBytes(long maxFileSizeBytes) {
+            this.maxFileSizeBytes = maxFileSizeBytes;
+            return this;
+        }
+
+        /**
+         * Maximum time to load and parse one file, greater than zero. Defaults to 1 minute.
+         */
+        public Builder timeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * Skipped files are moved to this directory. By default, they are left where they are.
+         */
+        public Builder quarantineDirectory(Path quarantineDirectory) {
+            this.quarantineDirectory = quarantineDirectory;
+            return this;
+        }
+
+        /**
+         * Is told about every skipped file. Defaults to logging a warning.
+         */
+        public Builder skippedFileListener(Consumer<SkippedFile> skippedFileListener) {
+            this.skippedFileListener = skippedFileListener;
+            return this;
+        }
+
+        public ParallelDocumentLoader build() {
+            return new ParallelDocumentLoader(this);
+        }
+    }
+}
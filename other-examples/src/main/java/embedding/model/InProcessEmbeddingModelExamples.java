@@ -1,6 +1,7 @@
 package embedding.model;
 
 import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.OnnxEmbeddingModel;
@@ -8,6 +9,8 @@ import dev.langchain4j.model.embedding.onnx.PoolingMode;
 import dev.langchain4j.store.embedding.CosineSimilarity;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class InProcessEmbeddingModelExamples {
 
@@ -73,4 +76,35 @@ public class InProcessEmbeddingModelExamples {
             System.out.println(CosineSimilarity.between(englishTextEmbedding, frenchTextEmbedding)); // 0.9060777281158113
         }
     }
+
+    static class Pooled_In_Process_Embedding_Model_Example {
+
+        public static void main(String[] args) throws Exception {
+
+            // A single in-process model wraps one ONNX session, so concurrent callers contend on it.
+            // PooledOnnxEmbeddingModel owns several sessions and spreads the work across them.
+            // Here: the model bundled in "langchain4j-embeddings-all-minilm-l6-v2", 4 sessions with 1 ONNX thread each
+            try (PooledOnnxEmbeddingModel embeddingModel = PooledOnnxEmbeddingModel.builder()
+                    .modelResource("all-minilm-l6-v2.onnx")
+                    .tokenizerResource("all-minilm-l6-v2-tokenizer.json")
+                    .poolingMode(PoolingMode.MEAN)
+                    .poolSize(4)
+                    .intraOpThreads(1)
+                    .build()) {
+
+                List<TextSegment> textSegments = new ArrayList<>();
+                for (int i = 0; i < 1000; i++) {
+                    textSegments.add(TextSegment.from("This is sentence number " + i + " to embed."));
+                }
+
+                long start = System.nanoTime();
+                List<Embedding> embeddings = embeddingModel.embedAll(textSegments).content();
+                long millis = (System.nanoTime() - start) / 1_000_000;
+
+                System.out.println(embeddings.size() + " embeddings in " + millis + " ms");
+                System.out.println(embeddingModel.stats());
+                System.out.printf("pool utilisation: %.0f%%%n", embeddingModel.stats().utilisation() * 100);
+            }
+        }
+    }
 }
@@ -0,0 +1,127 @@
+package embedding.model;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static dev.langchain4j.internal.ValidationUtils.ensureNotBlank;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mapdb.Serializer.BYTE_ARRAY;
+import static org.mapdb.Serializer.FLOAT_ARRAY;
+
+/**
+ * An {@link EmbeddingModel} decorator that keeps every computed embedding in a MapDB file,
+ * so that embedding the same texts again, after a restart or on another machine with a copy of the file,
+ * skips inference entirely.
+ * <p>
+ * The cache is content-addressed: the key is the SHA-256 hash of the model id and the text,
+ * the value is the vector as a compact float array. The model id must change whenever the model does,
+ * otherwise embeddings of the old model would be returned.
+ * <p>
+ * See also {@code ServiceWithPersistentMemoryExample}, which persists chat memory the same way.
+ */
+public class PersistentCachingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegate;
+    private final String modelId;
+
+    private final DB db;
+    private final Map<byte[], float[]> embeddings;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PersistentCachingEmbeddingModel(EmbeddingModel delegate, String modelId, Path file) {
+        this.delegate = ensureNotNull(delegate, "delegate");
+        this.modelId = ensureNotBlank(modelId, "modelId");
+        this.db = DBMaker.fileDB(ensureNotNull(file, "file").toFile())
+                .fileMmapEnableIfSupported()
+                .transactionEnable()
+                .make();
+        this.embeddings = db.hashMap("embeddings", BYTE_ARRAY, FLOAT_ARRAY).createOrOpen();
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        Embedding[] result = new Embedding[textSegments.size()];
+        byte[][] keys = new byte[textSegments.size()][];
+        List<TextSegment> missed = new ArrayList<>();
+        List<Integer> missedIndexes = new ArrayList<>();
+
+        for (int i = 0; i < textSegments.size(); i++) {
+            keys[i] = key(textSegments.get(i).text());
+            float[] vector = embeddings.get(keys[i]);
+            if (vector != null) {
+                result[i] = Embedding.from(vector);
+            } else {
+                missed.add(textSegments.get(i));
+                missedIndexes.add(i);
+            }
+        }
+        hits.add(textSegments.size() - missed.size());
+        misses.add(missed.size());
+        if (missed.isEmpty()) {
+            return Response.from(Arrays.asList(result));
+        }
+
+        // only the texts that are not in the file yet are embedded, then stored in one transaction
+        Response<List<Embedding>> response = delegate.embedAll(missed);
+        synchronized (db) {
+            for (int i = 0; i < missed.size(); i++) {
+                int index = missedIndexes.get(i);
+                result[index] = response.content().get(i);
+                embeddings.put(keys[index], result[index].vector());
+            }
+            db.commit();
+        }
+        return Response.from(Arrays.asList(result), response.tokenUsage(), response.finishReason(), response.metadata());
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    /**
+     * Number of texts served from the file since this instance was created.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of texts sent to the model since this instance was created.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    @Override
+    public void close() {
+        db.close();
+    }
+
+    private byte[] key(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelId.getBytes(UTF_8));
+            digest.update((byte) 0);
+            return digest.digest(text.getBytes(UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
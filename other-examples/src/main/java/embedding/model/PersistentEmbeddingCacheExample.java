@@ -0,0 +1,42 @@
+package embedding.model;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.parser.TextDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.loadDocument;
+
+public class PersistentEmbeddingCacheExample {
+
+    /**
+     * See also {@code ServiceWithPersistentMemoryExample}.
+     */
+
+    public static void main(String[] args) throws URISyntaxException {
+
+        Path documentPath = Paths.get(PersistentEmbeddingCacheExample.class.getClassLoader()
+                .getResource("example-files/story-about-happy-carrot.txt").toURI());
+        Document document = loadDocument(documentPath, new TextDocumentParser());
+        List<TextSegment> segments = DocumentSplitters.recursive(50, 0).split(document);
+
+        // The model id is part of the cache key: change it when the model changes
+        try (PersistentCachingEmbeddingModel embeddingModel = new PersistentCachingEmbeddingModel(
+                new AllMiniLmL6V2EmbeddingModel(), "all-minilm-l6-v2", Path.of("embeddings.db"))) {
+
+            long start = System.nanoTime();
+            embeddingModel.embedAll(segments);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            // The first run embeds all segments. Run again: all segments are read from "embeddings.db".
+            System.out.printf("%d segments in %d ms: %d from the cache, %d embedded%n",
+                    segments.size(), millis, embeddingModel.hits(), embeddingModel.misses());
+        }
+    }
+}
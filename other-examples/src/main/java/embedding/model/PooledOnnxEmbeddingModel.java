@@ -0,0 +1,312 @@
+package embedding.model;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.AbstractInProcessEmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.OnnxBertBiEncoder;
+import dev.langchain4j.model.embedding.onnx.PoolingMode;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+
+/**
+ * An in-process ONNX {@link EmbeddingModel} that owns a pool of inference sessions instead of a single one,
+ * so that concurrent callers do not contend on one session and throughput scales with the number of cores.
+ * <p>
+ * Each session runs with {@code intraOpThreads} ONNX threads. By default, the pool has one session per
+ * {@code intraOpThreads} available processors. A single text is embedded on the calling thread with
+ * whichever session is idle; {@link #embedAll(List)} splits the texts into one batch per session and runs
+ * the batches on the pool in parallel. {@link #stats()} reports how busy the pool is.
+ * <p>
+ * The model can be loaded from files (e.g. a model from https://huggingface.co/Xenova) or from the classpath,
+ * e.g. the model bundled in "langchain4j-embeddings-all-minilm-l6-v2":
+ * <pre>{@code
+ * PooledOnnxEmbeddingModel embeddingModel = PooledOnnxEmbeddingModel.builder()
+ *         .modelResource("all-minilm-l6-v2.onnx")
+ *         .tokenizerResource("all-minilm-l6-v2-tokenizer.json")
+ *         .poolingMode(PoolingMode.MEAN)
+ *         .poolSize(8)
+ *         .intraOpThreads(4)
+ *         .build();
+ * }</pre>
+ */
+public class PooledOnnxEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private final int poolSize;
+    private final int dimension;
+    private final BlockingQueue<Session> idle;
+    private final List<Session> sessions = new ArrayList<>();
+    private final ExecutorService executor;
+
+    private final long createdNanos = System.nanoTime();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder texts = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    private PooledOnnxEmbeddingModel(Builder builder) {
+        byte[] model = read(builder.modelPath, builder.modelResource, "model");
+        byte[] tokenizer = read(builder.tokenizerPath, builder.tokenizerResource, "tokenizer");
+        int intraOpThreads = ensureGreaterThanZero(builder.intraOpThreads, "intraOpThreads");
+        this.poolSize = builder.poolSize != null
+                ? ensureGreaterThanZero(builder.poolSize, "poolSize")
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / intraOpThreads);
+        PoolingMode poolingMode = ensureNotNull(builder.poolingMode, "poolingMode");
+
+        OrtEnvironment environment = OrtEnvironment.getEnvironment();
+        this.idle = new ArrayBlockingQueue<>(poolSize);
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            options.setIntraOpNumThreads(intraOpThreads);
+            options.setInterOpNumThreads(1);
+            for (int i = 0; i < poolSize; i++) {
+                OrtSession ortSession = environment.createSession(model, options);
+                OnnxBertBiEncoder encoder = new OnnxBertBiEncoder(
+                        environment, ortSession, new ByteArrayInputStream(tokenizer), poolingMode);
+                Session session = new Session(ortSession, encoder);
+                sessions.add(session);
+                idle.add(session);
+            }
+            // computed once, on one session and outside of the pool metrics
+            this.dimension = sessions.get(0).dimension();
+        } catch (OrtException e) {
+            close();
+            throw new RuntimeException(e);
+        }
+        this.executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "onnx-embedding-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        if (textSegments.size() <= 1) {
+            return embedBatch(textSegments);
+        }
+
+        // one batch per session, each running on the pool with whichever session is idle
+        int batchSize = (textSegments.size() + poolSize - 1) / poolSize;
+        List<CompletableFuture<Response<List<Embedding>>>> futures = new ArrayList<>();
+        for (int from = 0; from < textSegments.size(); from += batchSize) {
+            List<TextSegment> batch = textSegments.subList(from, Math.min(from + batchSize, textSegments.size()));
+            futures.add(CompletableFuture.supplyAsync(() -> embedBatch(batch), executor));
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(textSegments.size());
+        TokenUsage tokenUsage = null;
+        for (CompletableFuture<Response<List<Embedding>>> future : futures) {
+            Response<List<Embedding>> response = join(future);
+            embeddings.addAll(response.content());
+            tokenUsage = TokenUsage.sum(tokenUsage, response.tokenUsage());
+        }
+        return Response.from(embeddings, tokenUsage);
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * A snapshot of the pool metrics.
+     */
+    public Stats stats() {
+        return new Stats(poolSize, poolSize - idle.size(), batches.sum(), texts.sum(),
+                busyNanos.sum(), waitNanos.sum(), System.nanoTime() - createdNanos);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        for (Session session : sessions) {
+            try {
+                session.ortSession().close();
+            } catch (OrtException e) {
+                // keep closing the remaining sessions
+            }
+        }
+    }
+
+    private Response<List<Embedding>> embedBatch(List<TextSegment> batch) {
+        long start = System.nanoTime();
+        Session session;
+        try {
+            session = idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        long acquired = System.nanoTime();
+        try {
+            return session.embedAll(batch);
+        } finally {
+            idle.add(session);
+            waitNanos.add(acquired - start);
+            busyNanos.add(System.nanoTime() - acquired);
+            batches.increment();
+            texts.add(batch.size());
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static byte[] read(Path path, String resource, String name) {
+        try {
+            if (path != null) {
+                return Files.readAllBytes(path);
+            }
+            ensureNotNull(resource, name + "Path or " + name + "Resource");
+            try (InputStream inputStream = PooledOnnxEmbeddingModel.class.getClassLoader().getResourceAsStream(resource)) {
+                return ensureNotNull(inputStream, "classpath resource " + resource).readAllBytes();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * One pooled session. Texts are embedded on the calling thread, the pool itself decides the parallelism.
+     */
+    private static class Session extends AbstractInProcessEmbeddingModel {
+
+        private final OrtSession ortSession;
+        private final OnnxBertBiEncoder encoder;
+
+        Session(OrtSession ortSession, OnnxBertBiEncoder encoder) {
+            super(Runnable::run);
+            this.ortSession = ortSession;
+            this.encoder = encoder;
+        }
+
+        OrtSession ortSession() {
+            return ortSession;
+        }
+
+        @Override
+        protected OnnxBertBiEncoder model() {
+            return encoder;
+        }
+    }
+
+    /**
+     * Pool metrics.
+     *
+     * @param poolSize     number of sessions
+     * @param busySessions number of sessions embedding right now
+     * @param batches      number of batches embedded so far
+     * @param texts        number of texts embedded so far
+     * @param busyNanos    total time sessions spent embedding
+     * @param waitNanos    total time callers waited for an idle session
+     * @param uptimeNanos  time since the pool was created
+     */
+    public record Stats(int poolSize, int busySessions, long batches, long texts,
+                        long busyNanos, long waitNanos, long uptimeNanos) {
+
+        /**
+         * Share of the total session time (pool size x uptime) spent embedding, between 0 and 1.
+         */
+        public double utilisation() {
+            return uptimeNanos == 0 ? 0 : (double) busyNanos / ((double) poolSize * uptimeNanos);
+        }
+    }
+
+    public static class Builder {
+
+        private Path modelPath;
+        private String modelResource;
+        private Path tokenizerPath;
+        private String tokenizerResource;
+        private PoolingMode poolingMode = PoolingMode.MEAN;
+        private Integer poolSize;
+        private int intraOpThreads = 1;
+
+        public Builder modelPath(Path modelPath) {
+            this.modelPath = modelPath;
+            return this;
+        }
+
+        /**
+         * Name of a classpath resource with the ONNX model, used when no {@link #modelPath(Path)} is set.
+         */
+        public Builder modelResource(String modelResource) {
+            this.modelResource = modelResource;
+            return this;
+        }
+
+        public Builder tokenizerPath(Path tokenizerPath) {
+            this.tokenizerPath = tokenizerPath;
+            return this;
+        }
+
+        /**
+         * Name of a classpath resource with the tokenizer, used when no {@link #tokenizerPath(Path)} is set.
+         */
+        public Builder tokenizerResource(String tokenizerResource) {
+            this.tokenizerResource = tokenizerResource;
+            return this;
+        }
+
+        public Builder poolingMode(PoolingMode poolingMode) {
+            this.poolingMode = poolingMode;
+            return this;
+        }
+
+        /**
+         * Number of sessions. Defaults to the number of available processors divided by {@code intraOpThreads}.
+         */
+        public Builder poolSize(int poolSize) {
+            this.poolSize = poolSize;
+            return this;
+        }
+
+        /**
+         * Number of ONNX threads each session uses for a single inference. Defaults to 1.
+         */
+        public Builder intraOpThreads(int intraOpThreads) {
+            this.intraOpThreads = intraOpThreads;
+            return this;
+        }
+
+        public PooledOnnxEmbeddingModel build() {
+            return new PooledOnnxEmbeddingModel(this);
+        }
+    }
+}
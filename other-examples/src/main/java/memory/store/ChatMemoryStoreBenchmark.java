@@ -0,0 +1,155 @@
+package memory.store;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messagesFromJson;
+import static dev.langchain4j.data.message.ChatMessageSerializer.messagesToJson;
+import static org.mapdb.Serializer.STRING;
+
+/**
+ * Compares the throughput of the MapDB chat memory store with a commit per update,
+ * as in {@code ServiceWithPersistentMemoryForEachUserExample}, and of {@link GroupCommitChatMemoryStore}.
+ * <p>
+ * Many sessions chat at the same time, each through its own {@link MessageWindowChatMemory},
+ * so every turn is two updates of the store. The sessions are spread over a pool of request threads.
+ * <p>
+ * Arguments: number of sessions, turns per session and request threads. Defaults to 1000, 10 and 64.
+ */
+public class ChatMemoryStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int turns = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        System.out.printf("%d sessions, %d turns each, %d request threads%n", sessions, turns, threads);
+
+        Path perUpdateFile = tempFile();
+        try (PerUpdateCommitChatMemoryStore store = new PerUpdateCommitChatMemoryStore(perUpdateFile)) {
+            run("commit per update", store, sessions, turns, threads);
+        }
+
+        Path syncFile = tempFile();
+        try (GroupCommitChatMemoryStore store = GroupCommitChatMemoryStore.builder()
+                .file(syncFile)
+                .durability(GroupCommitChatMemoryStore.Durability.SYNC)
+                .build()) {
+            run("group commit, SYNC", store, sessions, turns, threads);
+        }
+
+        Path asyncFile = tempFile();
+        try (GroupCommitChatMemoryStore store = GroupCommitChatMemoryStore.builder()
+                .file(asyncFile)
+                .durability(GroupCommitChatMemoryStore.Durability.ASYNC)
+                .build()) {
+            run("group commit, ASYNC", store, sessions, turns, threads);
+        }
+
+        // every mode must leave the same conversations on disk
+        try (PerUpdateCommitChatMemoryStore perUpdate = new PerUpdateCommitChatMemoryStore(perUpdateFile);
+             GroupCommitChatMemoryStore sync = GroupCommitChatMemoryStore.builder().file(syncFile).build();
+             GroupCommitChatMemoryStore async = GroupCommitChatMemoryStore.builder().file(asyncFile).build()) {
+            for (int session = 0; session < sessions; session++) {
+                List<ChatMessage> expected = perUpdate.getMessages(session);
+                if (expected.isEmpty() || !expected.equals(sync.getMessages(session)) || !expected.equals(async.getMessages(session))) {
+                    throw new IllegalStateException("Session " + session + " differs between the stores");
+                }
+            }
+        }
+        System.out.println("All stores contain the same " + sessions + " conversations");
+    }
+
+    private static void run(String name, ChatMemoryStore store, int sessions, int turns, int threads) throws Exception {
+
+        ExecutorService requestThreads = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> conversations = new ArrayList<>();
+            for (int session = 0; session < sessions; session++) {
+                int memoryId = session;
+                conversations.add(requestThreads.submit(() -> {
+                    ChatMemory chatMemory = MessageWindowChatMemory.builder()
+                            .id(memoryId)
+                            .maxMessages(10)
+                            .chatMemoryStore(store)
+                            .build();
+                    for (int turn = 0; turn < turns; turn++) {
+                        chatMemory.add(UserMessage.from("Question " + turn + " of session " + memoryId));
+                        chatMemory.add(AiMessage.from("Answer " + turn + " to session " + memoryId));
+                    }
+                }));
+            }
+            for (Future<?> conversation : conversations) {
+                conversation.get();
+            }
+        } finally {
+            requestThreads.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int updates = sessions * turns * 2;
+        System.out.printf("%-20s %6d updates in %6.2f s, %8.0f updates/s%n", name + ":", updates, seconds, updates / seconds);
+    }
+
+    private static Path tempFile() throws IOException {
+        Path file = Files.createTempFile("chat-memory-benchmark", ".db");
+        // MapDB creates the file itself
+        Files.delete(file);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * The store of {@code ServiceWithPersistentMemoryForEachUserExample}, with a configurable file
+     */
+    private static class PerUpdateCommitChatMemoryStore implements ChatMemoryStore, AutoCloseable {
+
+        private final DB db;
+        private final Map<String, String> map;
+
+        PerUpdateCommitChatMemoryStore(Path file) {
+            this.db = DBMaker.fileDB(file.toFile()).transactionEnable().make();
+            this.map = db.hashMap("messages", STRING, STRING).createOrOpen();
+        }
+
+        @Override
+        public List<ChatMessage> getMessages(Object memoryId) {
+            return messagesFromJson(map.get(String.valueOf(memoryId)));
+        }
+
+        @Override
+        public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+            map.put(String.valueOf(memoryId), messagesToJson(messages));
+            db.commit();
+        }
+
+        @Override
+        public void deleteMessages(Object memoryId) {
+            map.remove(String.valueOf(memoryId));
+            db.commit();
+        }
+
+        @Override
+        public void close() {
+            db.close();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package memory.store;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messagesFromJson;
+import static dev.langchain4j.data.message.ChatMessageSerializer.messagesToJson;
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.mapdb.Serializer.STRING;
+
+/**
+ * The MapDB {@link ChatMemoryStore} of {@code ServiceWithPersistentMemoryForEachUserExample}, with group commit:
+ * instead of one {@code db.commit()} per update, the updates of all memory ids are committed together
+ * by a background thread, at most {@code maxDelay} after the first of them or as soon as there are
+ * {@code maxBatchSize} of them.
+ * <p>
+ * Every write has a {@link Durability}. A {@link Durability#SYNC} write returns once the commit that contains it
+ * is done, like with a commit per update, but shares that commit with the other writes of the window.
+ * A {@link Durability#ASYNC} write returns at once and is committed with the next batch; it is lost if the
+ * process dies before. {@link #updateMessages(Object, List)} and {@link #deleteMessages(Object)} use the
+ * {@code durability} of the builder.
+ * <p>
+ * Writes of different memory ids go to the map concurrently; only the commit itself excludes them.
+ * Reads see writes that are not committed yet. See {@link ChatMemoryStoreBenchmark} for the throughput
+ * of both modes against a commit per update.
+ */
+public class GroupCommitChatMemoryStore implements ChatMemoryStore, AutoCloseable {
+
+    public enum Durability {
+
+        /**
+         * The write returns when it is committed
+         */
+        SYNC,
+
+        /**
+         * The write returns at once and is committed with the next batch
+         */
+        ASYNC
+    }
+
+    private final DB db;
+    private final Map<String, String> map;
+    private final long maxDelayNanos;
+    private final int maxBatchSize;
+    private final Durability durability;
+
+    /**
+     * Writers hold the read lock while they change the map, the committer holds the write lock while it commits,
+     * so that every write belongs to exactly one batch.
+     */
+    private final ReadWriteLock commitLock = new ReentrantReadWriteLock();
+    private final Object batchMonitor = new Object();
+    private final Thread committer;
+
+    private Batch batch = new Batch();
+    private boolean closed;
+
+    private GroupCommitChatMemoryStore(Builder builder) {
+        this.db = DBMaker.fileDB(ensureNotNull(builder.file, "file").toFile())
+                .transactionEnable()
+                .make();
+        this.map = db.hashMap("messages", STRING, STRING).createOrOpen();
+        this.maxDelayNanos = ensureNotNull(builder.maxDelay, "maxDelay").toNanos();
+        this.maxBatchSize = ensureGreaterThanZero(builder.maxBatchSize, "maxBatchSize");
+        this.durability = ensureNotNull(builder.durability, "durability");
+        this.committer = new Thread(this::commitBatches, "chat-memory-group-commit");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        return messagesFromJson(map.get(String.valueOf(memoryId)));
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        updateMessages(memoryId, messages, durability);
+    }
+
+    public void updateMessages(Object memoryId, List<ChatMessage> messages, Durability durability) {
+        String json = messagesToJson(messages);
+        write(() -> map.put(String.valueOf(memoryId), json), durability);
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        deleteMessages(memoryId, durability);
+    }
+
+    public void deleteMessages(Object memoryId, Durability durability) {
+        write(() -> map.remove(String.valueOf(memoryId)), durability);
+    }
+
+    /**
+     * Commits the pending writes and closes the file.
+     */
+    @Override
+    public void close() {
+        synchronized (batchMonitor) {
+            closed = true;
+            batchMonitor.notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        db.close();
+    }
+
+    private void write(Runnable change, Durability durability) {
+        ensureNotNull(durability, "durability");
+        Batch joined;
+        commitLock.readLock().lock();
+        try {
+            synchronized (batchMonitor) {
+                if (closed) {
+                    throw new IllegalStateException("The store is closed");
+                }
+            }
+            change.run();
+            synchronized (batchMonitor) {
+                joined = batch;
+                if (joined.size++ == 0) {
+                    joined.openedNanos = System.nanoTime();
+                }
+                if (joined.size == 1 || joined.size >= maxBatchSize) {
+                    batchMonitor.notifyAll();
+                }
+            }
+        } finally {
+            commitLock.readLock().unlock();
+        }
+        if (durability == Durability.SYNC) {
+            joined.committed.join();
+        }
+    }
+
+    private void commitBatches() {
+        boolean last = false;
+        while (!last) {
+            synchronized (batchMonitor) {
+                try {
+                    while (batch.size == 0 && !closed) {
+                        batchMonitor.wait();
+                    }
+                    // wait for the window to end or the batch to fill up; closing commits at once
+                    long remaining;
+                    while (batch.size < maxBatchSize && !closed
+                            && (remaining = batch.openedNanos + maxDelayNanos - System.nanoTime()) > 0) {
+                        NANOSECONDS.timedWait(batchMonitor, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    closed = true;
+                }
+                // writes that started before closing are still committed, under the write lock below
+                last = closed;
+            }
+
+            Batch committing;
+            commitLock.writeLock().lock();
+            try {
+                synchronized (batchMonitor) {
+                    committing = batch;
+                    batch = new Batch();
+                }
+                try {
+                    db.commit();
+                    committing.committed.complete(null);
+                } catch (RuntimeException e) {
+                    committing.committed.completeExceptionally(e);
+                }
+            } finally {
+                commitLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * The writes since the last commit
+     */
+    private static class Batch {
+
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+        int size;
+        long openedNanos;
+    }
+
+    public static class Builder {
+
+        private Path file;
+        private Duration maxDelay = Duration.ofMillis(10);
+        private int maxBatchSize = 256;
+        private Durability durability = Durability.SYNC;
+
+        public Builder file(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        /**
+         * How long a write may wait for others to share its commit. Defaults to 10 milliseconds.
+         */
+        public Builder maxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * A batch is committed as soon as it has this many writes. Defaults to 256.
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * The durability of the writes of the {@link ChatMemoryStore} methods. Defaults to {@link Durability#SYNC}.
+         */
+        public Builder durability(Durability durability) {
+            this.durability = durability;
+            return this;
+        }
+
+        public GroupCommitChatMemoryStore build() {
+            return new GroupCommitChatMemoryStore(this);
+        }
+    }
+}
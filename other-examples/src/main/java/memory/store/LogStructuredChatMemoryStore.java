@@ -0,0 +1,502 @@
+package memory.store;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messageFromJson;
+import static dev.langchain4j.data.message.ChatMessageSerializer.messageToJson;
+import static dev.langchain4j.internal.ValidationUtils.ensureBetween;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A {@link ChatMemoryStore} that appends the changes of every update to a log, instead of serializing
+ * the whole message list and overwriting it like the {@code PersistentChatMemoryStore} of
+ * {@code ServiceWithPersistentMemoryExample}.
+ * <p>
+ * A chat memory passes its whole window to {@link #updateMessages(Object, List)}. The store compares it with
+ * the messages it has: the messages that were evicted from the window get a tombstone, the messages that are new
+ * are appended, and the messages in between are not written again. A turn therefore writes a few hundred bytes,
+ * however long the conversation.
+ * <p>
+ * Every memory id has its own directory of segment files. Each line of a segment is a record:
+ * <pre>
+ * A &lt;sequence number&gt; &lt;message JSON&gt;    a message was added
+ * D &lt;sequence number&gt;...                 messages were evicted
+ * C                                       the memory was deleted
+ * </pre>
+ * Only the offsets of the live messages are kept in memory; the messages themselves are read from the segments
+ * whenever they are needed, so reading a memory only reads its window and the heap does not hold the conversations.
+ * A log is replayed the first time its memory id is used; a record cut short by a crash is truncated.
+ * Deleting a memory also drops its offsets.
+ * <p>
+ * When the evicted messages of a memory take more bytes than the live ones, and at least
+ * {@code minCompactionBytes}, the live records are copied to a new segment in the background
+ * and the older segments are deleted.
+ */
+public class LogStructuredChatMemoryStore implements ChatMemoryStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(LogStructuredChatMemoryStore.class);
+
+    private final Path directory;
+    private final long maxSegmentSizeBytes;
+    private final long minCompactionBytes;
+    private final boolean fsync;
+
+    private final Map<String, Log> logs = new ConcurrentHashMap<>();
+    private final Set<String> pendingCompactions = ConcurrentHashMap.newKeySet();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-memory-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private LogStructuredChatMemoryStore(Builder builder) {
+        this.directory = ensureNotNull(builder.directory, "directory");
+        this.maxSegmentSizeBytes = ensureBetween(builder.maxSegmentSizeBytes, 1, Long.MAX_VALUE, "maxSegmentSizeBytes");
+        this.minCompactionBytes = ensureBetween(builder.minCompactionBytes, 0, Long.MAX_VALUE, "minCompactionBytes");
+        this.fsync = builder.fsync;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        return withLog(memoryId, Log::messages);
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        String key = String.valueOf(memoryId);
+        Log memoryLog = withLog(memoryId, current -> current.update(messages) ? current : null);
+        if (memoryLog != null && pendingCompactions.add(key)) {
+            compactor.execute(() -> {
+                pendingCompactions.remove(key);
+                try {
+                    memoryLog.compact();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to compact the chat memory {}", key, e);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        String key = String.valueOf(memoryId);
+        withLog(memoryId, memoryLog -> {
+            memoryLog.delete();
+            memoryLog.removed = true;
+            logs.remove(key, memoryLog);
+            return null;
+        });
+    }
+
+    /**
+     * Waits for the pending compactions. Every update is already written when it returns.
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the action on the log of the memory id, holding its lock.
+     * A log that was removed by a concurrent deletion is looked up again.
+     */
+    private <T> T withLog(Object memoryId, Function<Log, T> action) {
+        String key = String.valueOf(memoryId);
+        while (true) {
+            Log memoryLog = logs.computeIfAbsent(key, k -> new Log(directory.resolve("memory-" + URLEncoder.encode(k, UTF_8))));
+            synchronized (memoryLog) {
+                if (!memoryLog.removed) {
+                    return action.apply(memoryLog);
+                }
+            }
+        }
+    }
+
+    /**
+     * Where the record of a live message is.
+     */
+    private static class Record {
+
+        final long sequenceNumber;
+        long segment;
+        long offset;
+        final int length;
+
+        Record(long sequenceNumber, long segment, long offset, int length) {
+            this.sequenceNumber = sequenceNumber;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The log of one memory id. All methods hold its lock, so a compaction only blocks this memory.
+     */
+    private class Log {
+
+        private final Path directory;
+        private final List<Long> segments = new ArrayList<>();
+        private final Map<Long, Record> live = new LinkedHashMap<>();
+
+        private boolean loaded;
+        private boolean removed;
+        private long activeSegment = -1;
+        private long activeSize;
+        private long nextSequenceNumber;
+        private long liveBytes;
+        private long deadBytes;
+
+        Log(Path directory) {
+            this.directory = directory;
+        }
+
+        synchronized List<ChatMessage> messages() {
+            load();
+            List<ChatMessage> messages = new ArrayList<>(live.size());
+            for (Record record : live.values()) {
+                String line = new String(read(record), UTF_8);
+                messages.add(messageFromJson(line.substring(line.indexOf(' ', 2) + 1).stripTrailing()));
+            }
+            return messages;
+        }
+
+        /**
+         * Appends the difference between the stored and the given messages.
+         *
+         * @return whether the log should be compacted
+         */
+        synchronized boolean update(List<ChatMessage> messages) {
+            List<ChatMessage> current = messages();
+            List<Record> records = new ArrayList<>(live.values());
+
+            // the longest prefix of the new messages that the stored ones contain in the same order is kept
+            boolean[] kept = new boolean[current.size()];
+            int matched = 0;
+            int position = 0;
+            while (matched < messages.size()) {
+                int found = current.subList(position, current.size()).indexOf(messages.get(matched));
+                if (found < 0) {
+                    break;
+                }
+                kept[position + found] = true;
+                position += found + 1;
+                matched++;
+            }
+
+            List<Record> evicted = new ArrayList<>();
+            StringBuilder tombstone = new StringBuilder("D");
+            for (int i = 0; i < records.size(); i++) {
+                if (!kept[i]) {
+                    evicted.add(records.get(i));
+                    tombstone.append(' ').append(records.get(i).sequenceNumber);
+                }
+            }
+            if (evicted.isEmpty() && matched == messages.size()) {
+                return false;
+            }
+
+            List<byte[]> lines = new ArrayList<>();
+            if (!evicted.isEmpty()) {
+                lines.add(line(tombstone.toString()));
+            }
+            List<Record> added = new ArrayList<>();
+            for (ChatMessage message : messages.subList(matched, messages.size())) {
+                long sequenceNumber = nextSequenceNumber++;
+                byte[] line = line("A " + sequenceNumber + " " + messageToJson(message));
+                added.add(new Record(sequenceNumber, 0, 0, line.length));
+                lines.add(line);
+            }
+            long[] offsets = append(lines);
+
+            for (Record record : evicted) {
+                live.remove(record.sequenceNumber);
+                liveBytes -= record.length;
+                deadBytes += record.length;
+            }
+            if (!evicted.isEmpty()) {
+                deadBytes += lines.get(0).length;
+            }
+            int first = evicted.isEmpty() ? 0 : 1;
+            for (int i = 0; i < added.size(); i++) {
+                Record record = added.get(i);
+                record.segment = activeSegment;
+                record.offset = offsets[first + i];
+                live.put(record.sequenceNumber, record);
+                liveBytes += record.length;
+            }
+            return deadBytes >= minCompactionBytes && deadBytes > liveBytes;
+        }
+
+        synchronized void delete() {
+            load();
+            if (segments.isEmpty()) {
+                return;
+            }
+            // the clear record makes the deletion durable even if a crash leaves some segments behind
+            append(List.of(line("C")));
+            try {
+                for (long segment : segments) {
+                    Files.delete(segmentFile(segment));
+                }
+                Files.deleteIfExists(directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            segments.clear();
+            live.clear();
+            activeSegment++;
+            activeSize = liveBytes = deadBytes = 0;
+        }
+
+        /**
+         * Copies the live records to a new segment and deletes the older ones, oldest first.
+         * Replaying a log where a crash interrupted this adds the same messages again, which changes nothing.
+         */
+        synchronized void compact() {
+            if (removed || segments.isEmpty() || deadBytes == 0) {
+                return;
+            }
+            List<Long> oldSegments = new ArrayList<>(segments);
+            long segment = activeSegment + 1;
+            try (FileChannel channel = FileChannel.open(segmentFile(segment), CREATE, WRITE, APPEND)) {
+                long offset = 0;
+                for (Record record : live.values()) {
+                    write(channel, read(record));
+                    record.segment = segment;
+                    record.offset = offset;
+                    offset += record.length;
+                }
+                channel.force(false);
+                activeSegment = segment;
+                activeSize = offset;
+                segments.add(segment);
+                for (Long oldSegment : oldSegments) {
+                    Files.delete(segmentFile(oldSegment));
+                    segments.remove(oldSegment);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            deadBytes = 0;
+            log.debug("Compacted the chat memory in {} from {} segments to {} bytes", directory, oldSegments.size(), activeSize);
+        }
+
+        private void load() {
+            if (loaded) {
+                return;
+            }
+            loaded = true;
+            if (!Files.isDirectory(directory)) {
+                return;
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                files.map(file -> file.getFileName().toString())
+                        .filter(name -> name.endsWith(".log"))
+                        .map(name -> Long.parseLong(name.substring(0, name.length() - ".log".length())))
+                        .sorted()
+                        .forEach(segments::add);
+                for (long segment : segments) {
+                    replay(segment);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!segments.isEmpty()) {
+                activeSegment = segments.get(segments.size() - 1);
+            }
+        }
+
+        private void replay(long segment) throws IOException {
+            byte[] bytes = Files.readAllBytes(segmentFile(segment));
+            int start = 0;
+            for (int end = 0; end < bytes.length; end++) {
+                if (bytes[end] != '\n') {
+                    continue;
+                }
+                String line = new String(bytes, start, end - start, UTF_8);
+                int length = end + 1 - start;
+                switch (line.charAt(0)) {
+                    case 'A' -> {
+                        long sequenceNumber = Long.parseLong(line.substring(2, line.indexOf(' ', 2)));
+                        Record previous = live.put(sequenceNumber, new Record(sequenceNumber, segment, start, length));
+                        liveBytes += length - (previous == null ? 0 : previous.length);
+                        deadBytes += previous == null ? 0 : previous.length;
+                        nextSequenceNumber = Math.max(nextSequenceNumber, sequenceNumber + 1);
+                    }
+                    case 'D' -> {
+                        for (String sequenceNumber : line.substring(2).split(" ")) {
+                            Record record = live.remove(Long.parseLong(sequenceNumber));
+                            if (record != null) {
+                                liveBytes -= record.length;
+                                deadBytes += record.length;
+                            }
+                        }
+                        deadBytes += length;
+                    }
+                    case 'C' -> {
+                        live.clear();
+                        deadBytes += liveBytes + length;
+                        liveBytes = 0;
+                    }
+                    default -> throw new IllegalStateException("Unknown record in " + segmentFile(segment) + ": " + line);
+                }
+                start = end + 1;
+            }
+            activeSize = start;
+            if (start < bytes.length) {
+                log.warn("Truncating an incomplete record at the end of {}", segmentFile(segment));
+                try (FileChannel channel = FileChannel.open(segmentFile(segment), WRITE)) {
+                    channel.truncate(start);
+                }
+            }
+        }
+
+        /**
+         * Appends the lines to the active segment, or to a new one when it is full, with a single write.
+         *
+         * @return the offset of every line in the segment
+         */
+        private long[] append(List<byte[]> lines) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            long[] offsets = new long[lines.size()];
+            for (int i = 0; i < lines.size(); i++) {
+                offsets[i] = bytes.size();
+                bytes.writeBytes(lines.get(i));
+            }
+            if (activeSegment < 0 || (activeSize > 0 && activeSize + bytes.size() > maxSegmentSizeBytes)) {
+                activeSegment++;
+                activeSize = 0;
+            }
+            try {
+                Files.createDirectories(directory);
+                try (FileChannel channel = FileChannel.open(segmentFile(activeSegment), CREATE, WRITE, APPEND)) {
+                    write(channel, bytes.toByteArray());
+                    if (fsync) {
+                        channel.force(false);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (segments.isEmpty() || segments.get(segments.size() - 1) != activeSegment) {
+                segments.add(activeSegment);
+            }
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] += activeSize;
+            }
+            activeSize += bytes.size();
+            return offsets;
+        }
+
+        private byte[] read(Record record) {
+            ByteBuffer buffer = ByteBuffer.allocate(record.length);
+            try (FileChannel channel = FileChannel.open(segmentFile(record.segment), READ)) {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, record.offset + buffer.position()) < 0) {
+                        throw new IOException("Unexpected end of " + segmentFile(record.segment));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return buffer.array();
+        }
+
+        private Path segmentFile(long segment) {
+            return directory.resolve(String.format("%08d.log", segment));
+        }
+    }
+
+    private static byte[] line(String record) {
+        return (record + "\n").getBytes(UTF_8);
+    }
+
+    private static void write(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public static class Builder {
+
+        private Path directory;
+        private long maxSegmentSizeBytes = 1024 * 1024;
+        private long minCompactionBytes = 64 * 1024;
+        private boolean fsync = true;
+
+        /**
+         * The directory of the logs, one subdirectory per memory id.
+         */
+        public Builder directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * A new segment is started when the active one would grow larger. Defaults to 1 MB.
+         */
+        public Builder maxSegmentSizeBytes(long maxSegmentSizeBytes) {
+            this.maxSegmentSizeBytes = maxSegmentSizeBytes;
+            return this;
+        }
+
+        /**
+         * A log is not compacted before its evicted messages and tombstones take this many bytes. Defaults to 64 KB.
+         */
+        public Builder minCompactionBytes(long minCompactionBytes) {
+            this.minCompactionBytes = minCompactionBytes;
+            return this;
+        }
+
+        /**
+         * Whether every update is forced to disk before it returns, like a MapDB commit. Defaults to {@code true}.
+         */
+        public Builder fsync(boolean fsync) {
+            this.fsync = fsync;
+            return this;
+        }
+
+        public LogStructuredChatMemoryStore build() {
+            return new LogStructuredChatMemoryStore(this);
+        }
+    }
+}
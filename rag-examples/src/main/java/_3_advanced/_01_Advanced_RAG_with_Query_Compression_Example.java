@@ -1,7 +1,6 @@
 package _3_advanced;
 
 import _2_naive.Naive_RAG_Example;
-import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.parser.TextDocumentParser;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
@@ -18,11 +17,12 @@ import dev.langchain4j.rag.query.transformer.CompressingQueryTransformer;
 import dev.langchain4j.rag.query.transformer.QueryTransformer;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import shared.Assistant;
+import shared.ingestion.PipelinedIngestor;
+
+import java.util.stream.Stream;
 
-import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.loadDocument;
 import static dev.langchain4j.model.openai.OpenAiChatModelName.GPT_4_O_MINI;
 import static shared.Utils.*;
 
@@ -91,19 +91,20 @@ public class _01_Advanced_RAG_with_Query_Compression_Example {
      */
     private static Assistant createAssistant(String documentPath) {
 
-        Document document = loadDocument(toPath(documentPath), new TextDocumentParser());
-
         EmbeddingModel embeddingModel = new BgeSmallEnV15QuantizedEmbeddingModel();
 
         EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
 
-        EmbeddingStoreIngestor ingestor = EmbeddingStoreIngestor.builder()
+        // 流水线式摄取：加载、切分、嵌入和存储并行执行，内存占用与语料大小无关
+        // Pipelined ingestion: loading, splitting, embedding and storing run concurrently,
+        // with memory use independent of the corpus size
+        PipelinedIngestor ingestor = PipelinedIngestor.builder()
                 .documentSplitter(DocumentSplitters.recursive(300, 0))
                 .embeddingModel(embeddingModel)
                 .embeddingStore(embeddingStore)
                 .build();
 
-        ingestor.ingest(document);
+        ingestor.ingest(Stream.of(toPath(documentPath)), TextDocumentParser::new);
 
         // 聊天模型
         ChatModel chatModel = OpenAiChatModel.builder()
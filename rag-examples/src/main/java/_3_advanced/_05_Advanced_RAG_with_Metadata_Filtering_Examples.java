@@ -19,6 +19,7 @@ import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import org.junit.jupiter.api.Test;
 import shared.Assistant;
 import shared.Utils;
+import shared.store.BitmapIndexedEmbeddingStore;
 
 import java.util.function.Function;
 
@@ -95,7 +96,9 @@ class _05_Advanced_RAG_with_Metadata_Filtering_Examples {
         TextSegment user1Info = TextSegment.from("My favorite color is green", metadata("userId", "1"));
         TextSegment user2Info = TextSegment.from("My favorite color is red", metadata("userId", "2"));
 
-        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        // 位图索引存储在打分前按 userId 预过滤，只计算该用户的向量
+        // The bitmap-indexed store resolves the userId filter before scoring, so only that user's vectors are scanned
+        EmbeddingStore<TextSegment> embeddingStore = new BitmapIndexedEmbeddingStore();
         embeddingStore.add(embeddingModel.embed(user1Info).content(), user1Info);
         embeddingStore.add(embeddingModel.embed(user2Info).content(), user2Info);
         // embeddingStore contains information about both first and second user
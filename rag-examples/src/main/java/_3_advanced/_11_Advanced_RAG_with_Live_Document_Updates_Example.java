@@ -0,0 +1,97 @@
+package _3_advanced;
+
+import _2_naive.Naive_RAG_Example;
+import dev.langchain4j.data.document.parser.TextDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import shared.Assistant;
+import shared.ingestion.DirectoryWatcher;
+import shared.ingestion.IncrementalIngestor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static dev.langchain4j.model.openai.OpenAiChatModelName.GPT_4_O_MINI;
+import static shared.Utils.*;
+
+/**
+ * 文档实时更新的高级RAG示例
+ */
+public class _11_Advanced_RAG_with_Live_Document_Updates_Example {
+
+    /**
+     * 请参考 Naive_RAG_Example 以获取基础上下文。
+     * Please refer to {@link Naive_RAG_Example} for a basic context.
+     * <p>
+     * 这个示例展示了如何在应用运行时让嵌入存储跟随目录中文档的变化。
+     * 新增、修改或删除目录中的 .txt 文件后，几秒钟内助手就能检索到最新内容，无需重启。
+     * This example shows how to keep the embedding store in line with a directory while the application runs.
+     * After a .txt file is added, edited or deleted in the directory, the assistant retrieves the new content
+     * within seconds, without a restart.
+     * <p>
+     * 运行时可以传入要监视的目录，默认是内置的 documents 目录。
+     * The directory to watch can be passed as an argument, it defaults to the bundled "documents" directory.
+     */
+    public static void main(String[] args) throws IOException {
+
+        Path directory = args.length > 0 ? Path.of(args[0]) : toPath("documents/");
+
+        EmbeddingModel embeddingModel = new BgeSmallEnV15QuantizedEmbeddingModel();
+
+        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+
+        // 存储在内存中，所以清单也从空开始
+        // The store lives in memory, so the manifest starts empty as well
+        Path manifestFile = Files.createTempFile("live-document-updates", ".manifest");
+        manifestFile.toFile().deleteOnExit();
+
+        IncrementalIngestor ingestor = IncrementalIngestor.builder()
+                .documentSplitter(DocumentSplitters.recursive(300, 0))
+                .embeddingModel(embeddingModel)
+                .embeddingStore(embeddingStore)
+                .manifestFile(manifestFile)
+                .build();
+
+        // 文件在 500 毫秒内没有新的变化后才重新摄取
+        // A file is re-ingested once it has not changed for 500 ms
+        DirectoryWatcher watcher = new DirectoryWatcher(
+                directory, glob("**.txt"), new TextDocumentParser(), ingestor, Duration.ofMillis(500));
+        watcher.start();
+
+        ContentRetriever contentRetriever = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(embeddingStore)
+                .embeddingModel(embeddingModel)
+                .maxResults(2)
+                .minScore(0.6)
+                .build();
+
+        ChatModel chatModel = OpenAiChatModel.builder()
+                .apiKey(OPENAI_API_KEY)
+                .modelName(GPT_4_O_MINI)
+                .build();
+
+        Assistant assistant = AiServices.builder(Assistant.class)
+                .chatModel(chatModel)
+                .contentRetriever(contentRetriever)
+                .chatMemory(MessageWindowChatMemory.withMaxMessages(10))
+                .build();
+
+        // 在对话过程中修改目录中的文件，然后再次提问
+        // Edit the files in the directory during the conversation, then ask again
+        startConversationWith(assistant);
+
+        watcher.close();
+    }
+}
@@ -4,7 +4,6 @@ import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.DocumentParser;
 import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.parser.TextDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.segment.TextSegment;
@@ -18,7 +17,8 @@ import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import shared.ingestion.CachedTokenDocumentSplitter;
+import shared.store.FlatEmbeddingStore;
 
 import java.time.Duration;
 import java.util.HashMap;
@@ -44,10 +44,10 @@ public class _01_Low_Level_Naive_RAG_Example {
         DocumentParser documentParser = new TextDocumentParser();
         Document document = loadDocument(toPath("example-files/story-about-happy-carrot.txt"), documentParser);
 
-        // Split document into segments 100 tokens each
-        DocumentSplitter splitter = DocumentSplitters.recursive(
+        // Split document into segments of up to 300 tokens each.
+        // The document is tokenized once, instead of re-counting every paragraph, line and sentence.
+        DocumentSplitter splitter = new CachedTokenDocumentSplitter(
                 300,
-                0,
                 new OpenAiTokenCountEstimator(GPT_4_O_MINI)
         );
         List<TextSegment> segments = splitter.split(document);
@@ -57,7 +57,8 @@ public class _01_Low_Level_Naive_RAG_Example {
         List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
 
         // Store embeddings into embedding store for further search / retrieval
-        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        // Same results as InMemoryEmbeddingStore, scored with SIMD when run with --add-modules=jdk.incubator.vector
+        EmbeddingStore<TextSegment> embeddingStore = new FlatEmbeddingStore();
         embeddingStore.addAll(embeddings, segments);
 
         // Specify the question you want to ask the model
@@ -0,0 +1,79 @@
+package _5_performance;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.parser.TextDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import shared.store.QuantizedEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.loadDocument;
+import static shared.Utils.recall;
+import static shared.Utils.toPath;
+
+/**
+ * int8 量化嵌入存储的召回率与内存对比
+ * Compares recall and vector memory of {@link QuantizedEmbeddingStore} against the exact
+ * {@link InMemoryEmbeddingStore} on the bundled documents.
+ * <br>
+ * Every sentence of the documents is used as a query, and recall@k is the share of the exact top-k
+ * segments that the quantized store also returns in its top-k.
+ */
+public class _01_Quantized_Embedding_Store_Recall_Example {
+
+    private static final int MAX_RESULTS = 3;
+
+    public static void main(String[] args) {
+
+        EmbeddingModel embeddingModel = new BgeSmallEnV15QuantizedEmbeddingModel();
+
+        List<TextSegment> segments = new ArrayList<>();
+        List<String> queries = new ArrayList<>();
+        for (String documentPath : List.of(
+                "documents/miles-of-smiles-terms-of-use.txt",
+                "documents/biography-of-john-doe.txt")) {
+            Document document = loadDocument(toPath(documentPath), new TextDocumentParser());
+            segments.addAll(DocumentSplitters.recursive(100, 0).split(document));
+            for (String sentence : document.text().split("(?<=[.!?])\\s+")) {
+                if (!sentence.isBlank()) {
+                    queries.add(sentence.trim());
+                }
+            }
+        }
+
+        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        List<Embedding> queryEmbeddings = embeddingModel.embedAll(queries.stream().map(TextSegment::from).toList()).content();
+
+        // 两个存储使用相同的 id，以便比较结果
+        // Both stores use the same ids so that their results can be compared
+        InMemoryEmbeddingStore<TextSegment> exactStore = new InMemoryEmbeddingStore<>();
+        List<String> ids = exactStore.generateIds(segments.size());
+        exactStore.addAll(ids, embeddings, segments);
+
+        long floatBytes = (long) embeddings.size() * embeddingModel.dimension() * Float.BYTES;
+        System.out.printf("%d segments, %d queries, dimension %d%n",
+                segments.size(), queries.size(), embeddingModel.dimension());
+        System.out.printf("%-28s %12s %10s%n", "store", "vector bytes", "recall@" + MAX_RESULTS);
+        System.out.printf("%-28s %12d %10.3f%n", "float32 (InMemory)", floatBytes, 1.0);
+
+        for (int rescoreTopN : new int[]{0, 10, 20}) {
+            // 示例文档只有几十个片段，因此用较小的校准样本
+            // The bundled documents only have a few dozen segments, hence the small calibration sample
+            QuantizedEmbeddingStore quantizedStore = QuantizedEmbeddingStore.builder()
+                    .calibrationSize(64)
+                    .rescoreTopN(rescoreTopN)
+                    .build();
+            quantizedStore.addAll(ids, embeddings, segments);
+
+            double recall = recall(exactStore, quantizedStore, queryEmbeddings, MAX_RESULTS);
+            String name = rescoreTopN == 0 ? "int8" : "int8 + rescore top " + rescoreTopN;
+            System.out.printf("%-28s %12d %10.3f%n", name, quantizedStore.vectorMemoryBytes(), recall);
+        }
+    }
+}
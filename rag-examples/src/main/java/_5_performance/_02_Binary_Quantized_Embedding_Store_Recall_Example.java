@@ -0,0 +1,104 @@
+package _5_performance;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.parser.TextDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import shared.store.BinaryQuantizedEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.loadDocument;
+import static shared.Utils.recall;
+import static shared.Utils.toPath;
+
+/**
+ * 二值量化嵌入存储的召回率与延迟对比
+ * Reports the recall/latency tradeoff of {@link BinaryQuantizedEmbeddingStore} for different oversampling
+ * factors, against the exact {@link InMemoryEmbeddingStore}, on the bundled documents.
+ * <br>
+ * The documents are split into small segments and every sentence is used as a query. Recall@k is the share
+ * of the exact top-k segments that the binary-quantized store also returns in its top-k; latency is the
+ * average time of one search, measured after a warm-up round.
+ */
+public class _02_Binary_Quantized_Embedding_Store_Recall_Example {
+
+    private static final int MAX_RESULTS = 3;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+
+        EmbeddingModel embeddingModel = new BgeSmallEnV15QuantizedEmbeddingModel();
+
+        List<TextSegment> segments = new ArrayList<>();
+        List<String> queries = new ArrayList<>();
+        for (String documentPath : List.of(
+                "documents/miles-of-smiles-terms-of-use.txt",
+                "documents/biography-of-john-doe.txt")) {
+            Document document = loadDocument(toPath(documentPath), new TextDocumentParser());
+            segments.addAll(DocumentSplitters.recursive(50, 0).split(document));
+            for (String sentence : document.text().split("(?<=[.!?])\\s+")) {
+                if (!sentence.isBlank()) {
+                    queries.add(sentence.trim());
+                }
+            }
+        }
+
+        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        List<Embedding> queryEmbeddings = embeddingModel.embedAll(queries.stream().map(TextSegment::from).toList()).content();
+
+        // 两个存储使用相同的 id，以便比较结果
+        // Both stores use the same ids so that their results can be compared
+        InMemoryEmbeddingStore<TextSegment> exactStore = new InMemoryEmbeddingStore<>();
+        List<String> ids = exactStore.generateIds(segments.size());
+        exactStore.addAll(ids, embeddings, segments);
+
+        System.out.printf("%d segments, %d queries, dimension %d%n",
+                segments.size(), queries.size(), embeddingModel.dimension());
+        System.out.printf("%-28s %10s %14s%n", "store", "recall@" + MAX_RESULTS, "us per search");
+        System.out.printf("%-28s %10.3f %14.1f%n", "float32 (InMemory)", 1.0, latencyMicros(exactStore, queryEmbeddings));
+
+        for (int oversampling : new int[]{1, 2, 4, 8, 16}) {
+            // 示例文档只有一百多个片段，因此用较小的校准样本
+            // The bundled documents only have about a hundred and fifty segments, hence the small calibration sample
+            BinaryQuantizedEmbeddingStore binaryStore = BinaryQuantizedEmbeddingStore.builder()
+                    .oversampling(oversampling)
+                    .calibrationSize(100)
+                    .build();
+            binaryStore.addAll(ids, embeddings, segments);
+
+            double recall = recall(exactStore, binaryStore, queryEmbeddings, MAX_RESULTS);
+            double latency = latencyMicros(binaryStore, queryEmbeddings);
+            System.out.printf("%-28s %10.3f %14.1f%n", "binary, oversampling " + oversampling, recall, latency);
+        }
+    }
+
+    private static double latencyMicros(EmbeddingStore<TextSegment> store, List<Embedding> queryEmbeddings) {
+        long start = 0;
+        for (int round = 0; round <= ROUNDS; round++) {
+            if (round == 1) {
+                // 第一轮用于预热
+                // The first round is a warm-up
+                start = System.nanoTime();
+            }
+            for (Embedding queryEmbedding : queryEmbeddings) {
+                store.search(request(queryEmbedding));
+            }
+        }
+        return (System.nanoTime() - start) / 1000.0 / ROUNDS / queryEmbeddings.size();
+    }
+
+    private static EmbeddingSearchRequest request(Embedding queryEmbedding) {
+        return EmbeddingSearchRequest.builder()
+                .queryEmbedding(queryEmbedding)
+                .maxResults(MAX_RESULTS)
+                .build();
+    }
+}
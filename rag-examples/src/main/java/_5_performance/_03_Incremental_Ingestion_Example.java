@@ -0,0 +1,86 @@
+package _5_performance;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.parser.TextDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import shared.ingestion.IncrementalIngestor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.loadDocuments;
+import static shared.Utils.toPath;
+
+/**
+ * 增量摄取示例
+ * Shows how {@link IncrementalIngestor} turns a re-ingestion into a delta.
+ * <br>
+ * The bundled documents are copied to a temporary directory and ingested. Then the directory is re-ingested
+ * three times: unchanged, with one document edited, and with one document deleted. The store and the manifest
+ * are saved side by side after every run, as a real refresh job would do, and only the changed documents
+ * are embedded again.
+ */
+public class _03_Incremental_Ingestion_Example {
+
+    public static void main(String[] args) throws IOException {
+
+        Path directory = Files.createTempDirectory("incremental-ingestion");
+        for (String documentPath : List.of(
+                "documents/miles-of-smiles-terms-of-use.txt",
+                "documents/biography-of-john-doe.txt")) {
+            Path document = toPath(documentPath);
+            Files.copy(document, directory.resolve(document.getFileName()));
+        }
+        Path storeFile = Files.createTempFile("incremental-ingestion", ".store.json");
+        Path manifestFile = Files.createTempFile("incremental-ingestion", ".manifest");
+
+        EmbeddingModel embeddingModel = new BgeSmallEnV15QuantizedEmbeddingModel();
+
+        refresh("initial ingestion", directory, embeddingModel, storeFile, manifestFile);
+        refresh("nothing changed", directory, embeddingModel, storeFile, manifestFile);
+
+        Path biography = directory.resolve("biography-of-john-doe.txt");
+        Files.writeString(biography, Files.readString(biography) + "\nJohn Doe also had a dog named Max.");
+        refresh("one document edited", directory, embeddingModel, storeFile, manifestFile);
+
+        Files.delete(directory.resolve("miles-of-smiles-terms-of-use.txt"));
+        refresh("one document deleted", directory, embeddingModel, storeFile, manifestFile);
+    }
+
+    /**
+     * 一次定时刷新：加载存储、同步目录、保存存储
+     * One scheduled refresh: load the store, sync it with the directory, save the store
+     */
+    private static void refresh(String description, Path directory, EmbeddingModel embeddingModel,
+                                Path storeFile, Path manifestFile) {
+
+        InMemoryEmbeddingStore<TextSegment> embeddingStore = Files.exists(storeFile) && storeFile.toFile().length() > 0
+                ? InMemoryEmbeddingStore.fromFile(storeFile)
+                : new InMemoryEmbeddingStore<>();
+
+        IncrementalIngestor ingestor = IncrementalIngestor.builder()
+                .documentSplitter(DocumentSplitters.recursive(300, 0))
+                .embeddingModel(embeddingModel)
+                .embeddingStore(embeddingStore)
+                .manifestFile(manifestFile)
+                .build();
+
+        List<Document> documents = loadDocuments(directory, new TextDocumentParser());
+
+        long start = System.nanoTime();
+        IncrementalIngestor.Report report = ingestor.sync(documents);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        embeddingStore.serializeToFile(storeFile);
+
+        System.out.printf("%-22s added %d, changed %d, unchanged %d, removed %d, embedded %3d segments in %4d ms%n",
+                description + ":", report.added(), report.changed(), report.unchanged(), report.removed(),
+                report.embeddedSegments(), millis);
+    }
+}
@@ -0,0 +1,106 @@
+package _5_performance;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.parser.TextDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import shared.ingestion.NearDuplicateSegmentFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static dev.langchain4j.data.document.Document.FILE_NAME;
+import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.loadDocument;
+import static shared.ingestion.NearDuplicateSegmentFilter.DUPLICATE_SOURCES;
+import static shared.Utils.toPath;
+
+/**
+ * 近似重复过滤示例
+ * Shows how {@link NearDuplicateSegmentFilter} keeps near-identical paragraphs from being embedded and stored
+ * again and again.
+ * <br>
+ * The terms of use are copied across several product lines, with the product name changed in each copy, as a
+ * policy corpus often is. The documents are ingested with and without the filter, and the number of embedded
+ * segments is compared. The dropped segments remain reachable through the group of the segment that was kept.
+ */
+public class _04_Near_Duplicate_Filtering_Example {
+
+    private static final DocumentSplitter SPLITTER = DocumentSplitters.recursive(300, 0);
+
+    public static void main(String[] args) {
+
+        Document terms = loadDocument(toPath("documents/miles-of-smiles-terms-of-use.txt"), new TextDocumentParser());
+        List<Document> documents = new ArrayList<>();
+        for (String product : List.of("Miles of Smiles", "Smiles Express", "Smiles Premium", "Smiles Van")) {
+            String fileName = product.toLowerCase(Locale.ROOT).replace(' ', '-') + "-terms-of-use.txt";
+            documents.add(Document.from(terms.text().replace("Miles of Smiles", product),
+                    terms.metadata().copy().put("product", product).put(FILE_NAME, fileName)));
+        }
+        documents.add(loadDocument(toPath("documents/biography-of-john-doe.txt"), new TextDocumentParser()));
+
+        EmbeddingModel embeddingModel = new BgeSmallEnV15QuantizedEmbeddingModel();
+
+        int segments = documents.stream().mapToInt(document -> SPLITTER.split(document).size()).sum();
+
+        long millis = ingest(documents, embeddingModel, null);
+        System.out.printf("Without filter: embedded and stored %3d segments in %5d ms%n", segments, millis);
+
+        NearDuplicateSegmentFilter filter = NearDuplicateSegmentFilter.builder()
+                .threshold(0.8)
+                .build();
+        millis = ingest(documents, embeddingModel, filter);
+        System.out.printf("With filter:    embedded and stored %3d segments in %5d ms%n",
+                segments - filter.droppedCount(), millis);
+
+        // 每个保留的片段通过组元数据关联到被丢弃的片段
+        // Every kept segment is linked to the segments it stands for through its group metadata
+        Map<String, List<NearDuplicateSegmentFilter.Duplicate>> duplicates = filter.duplicates();
+        duplicates.entrySet().stream().limit(3).forEach(group -> System.out.println(group.getKey() + " also stands for "
+                + group.getValue().stream()
+                .map(duplicate -> duplicate.segment().metadata().getString("product")
+                        + String.format(" (%.2f)", duplicate.similarity()))
+                .toList()));
+
+        // 组 id 由保留的片段决定，因此再次导入得到相同的组，保存的映射仍然有效
+        // The groups are derived from the kept segments, so a second run gives the same groups
+        // and a persisted mapping stays valid
+        NearDuplicateSegmentFilter secondRun = NearDuplicateSegmentFilter.builder()
+                .threshold(0.8)
+                .build();
+        List<TextSegment> kept = secondRun.transformAll(SPLITTER.splitAll(documents));
+        System.out.println("Same groups in a second run: " + secondRun.duplicates().keySet().equals(duplicates.keySet()));
+
+        // 保留的片段本身也记录了被丢弃片段的来源，检索结果可以直接指回所有包含该文本的文件
+        // A kept segment also carries the sources of the segments dropped for it,
+        // so a search result points back to every file that contains its text
+        kept.stream()
+                .filter(segment -> segment.metadata().containsKey(DUPLICATE_SOURCES))
+                .findFirst()
+                .ifPresent(segment -> System.out.println(segment.metadata().getString(FILE_NAME) + "#"
+                        + segment.metadata().getString("index") + " also stands for "
+                        + segment.metadata().getString(DUPLICATE_SOURCES).lines().toList()));
+    }
+
+    private static long ingest(List<Document> documents, EmbeddingModel embeddingModel,
+                               NearDuplicateSegmentFilter filter) {
+
+        EmbeddingStoreIngestor.Builder builder = EmbeddingStoreIngestor.builder()
+                .documentSplitter(SPLITTER)
+                .embeddingModel(embeddingModel)
+                .embeddingStore(new InMemoryEmbeddingStore<TextSegment>());
+        if (filter != null) {
+            builder.textSegmentTransformer(filter);
+        }
+
+        long start = System.nanoTime();
+        builder.build().ingest(documents);
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
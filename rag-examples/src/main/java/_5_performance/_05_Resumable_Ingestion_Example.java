@@ -0,0 +1,118 @@
+package _5_performance;
+
+import dev.langchain4j.data.document.parser.TextDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import shared.ingestion.ResumableIngestionJob;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static shared.Utils.toPath;
+
+/**
+ * 可断点续传摄取示例
+ * Shows how {@link ResumableIngestionJob} continues a bulk ingestion that was killed.
+ * <br>
+ * Every paragraph of the bundled documents becomes a file of its own. The first run is killed half way,
+ * and everything that only lived in memory is thrown away. The second run loads the store saved by the
+ * store committer, continues from the checkpoint, and ends with every segment stored exactly once.
+ */
+public class _05_Resumable_Ingestion_Example {
+
+    public static void main(String[] args) throws IOException {
+
+        Path directory = Files.createTempDirectory("resumable-ingestion");
+        int paragraphs = 0;
+        for (String documentPath : List.of(
+                "documents/miles-of-smiles-terms-of-use.txt",
+                "documents/biography-of-john-doe.txt")) {
+            for (String paragraph : Files.readString(toPath(documentPath)).split("\\s*\\R\\s*\\R\\s*")) {
+                if (!paragraph.isBlank()) {
+                    Files.writeString(directory.resolve(String.format("paragraph-%03d.txt", paragraphs++)), paragraph);
+                }
+            }
+        }
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.sorted().toList();
+        }
+        Path storeFile = directory.resolve("store.json");
+        Path checkpointFile = directory.resolve("ingestion.checkpoint");
+
+        EmbeddingModel embeddingModel = new BgeSmallEnV15QuantizedEmbeddingModel();
+
+        try {
+            run(files, embeddingModel, storeFile, checkpointFile, files.size() / 2);
+        } catch (IllegalStateException killed) {
+            System.out.println("First run: " + killed.getMessage());
+        }
+
+        ResumableIngestionJob.Progress progress = run(files, embeddingModel, storeFile, checkpointFile, Integer.MAX_VALUE);
+        System.out.printf("Second run: %d/%d documents, %d segments stored%n",
+                progress.documents(), progress.totalDocuments(), progress.segments());
+
+        InMemoryEmbeddingStore<TextSegment> embeddingStore = InMemoryEmbeddingStore.fromFile(storeFile);
+        int stored = embeddingStore.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(embeddingModel.embed("Miles of Smiles").content())
+                .maxResults(Integer.MAX_VALUE)
+                .build()).matches().size();
+        System.out.printf("The saved store holds %d segments%n", stored);
+    }
+
+    /**
+     * 一次运行：加载保存的存储，继续摄取，在处理完 killAfter 个文档后模拟进程被杀死
+     * One run: loads the saved store and continues the ingestion, simulating a kill after killAfter documents
+     */
+    private static ResumableIngestionJob.Progress run(List<Path> files, EmbeddingModel embeddingModel,
+                                                      Path storeFile, Path checkpointFile, int killAfter) {
+
+        InMemoryEmbeddingStore<TextSegment> embeddingStore = Files.exists(storeFile)
+                ? InMemoryEmbeddingStore.fromFile(storeFile)
+                : new InMemoryEmbeddingStore<>();
+
+        ResumableIngestionJob job = ResumableIngestionJob.builder()
+                .documentParser(new TextDocumentParser())
+                .documentSplitter(DocumentSplitters.recursive(300, 0))
+                .embeddingModel(embeddingModel)
+                .embeddingStore(embeddingStore)
+                .checkpointFile(checkpointFile)
+                .batchSize(8)
+                // 内存存储在检查点前进之前保存到文件
+                // The in-memory store is saved before the checkpoint moves past a batch
+                .storeCommitter(store -> save(embeddingStore, storeFile))
+                .progressListener(progress -> {
+                    if (progress.documents() >= killAfter) {
+                        throw new IllegalStateException("killed after " + progress.documents() + "/"
+                                + progress.totalDocuments() + " documents, " + progress.segments() + " segments");
+                    }
+                })
+                .build();
+
+        return job.run(files);
+    }
+
+    /**
+     * 先写临时文件再原子替换，被杀死时不会留下损坏的存储文件
+     * Writes a temporary file and atomically replaces the store file, so that a kill never corrupts it
+     */
+    private static void save(InMemoryEmbeddingStore<TextSegment> embeddingStore, Path storeFile) {
+        try {
+            Path temporaryFile = Files.createTempFile(storeFile.getParent(), "store", ".tmp");
+            embeddingStore.serializeToFile(temporaryFile);
+            Files.move(temporaryFile, storeFile, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
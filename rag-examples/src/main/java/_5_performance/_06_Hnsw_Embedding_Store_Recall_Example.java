@@ -0,0 +1,121 @@
+package _5_performance;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import shared.store.HnswEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static shared.Utils.recall;
+
+/**
+ * HNSW 嵌入存储的召回率与查询延迟对比
+ * Compares recall and query latency of {@link HnswEmbeddingStore} for several {@code efSearch} values
+ * against the exact {@link InMemoryEmbeddingStore}.
+ * <br>
+ * The bundled documents only have a few dozen segments, which any graph searches exactly, so the corpus is
+ * synthetic: normalized vectors scattered widely around random cluster centers. The noise makes neighbours
+ * hard to tell apart, so this is a pessimistic stand-in for real embeddings; measure recall on your own data.
+ * Queries are drawn the same way, and recall@k is the share of the exact top-k that HNSW also returns.
+ */
+public class _06_Hnsw_Embedding_Store_Recall_Example {
+
+    private static final int SEGMENTS = 10_000;
+    private static final int QUERIES = 200;
+    private static final int DIMENSION = 384;
+    private static final int CLUSTERS = 200;
+    private static final int MAX_RESULTS = 10;
+
+    public static void main(String[] args) {
+
+        Random random = new Random(42);
+        List<float[]> centers = new ArrayList<>();
+        for (int i = 0; i < CLUSTERS; i++) {
+            centers.add(gaussian(random, 1));
+        }
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < SEGMENTS; i++) {
+            embeddings.add(near(centers.get(random.nextInt(CLUSTERS)), random));
+            segments.add(TextSegment.from("segment " + i));
+        }
+        List<Embedding> queryEmbeddings = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++) {
+            queryEmbeddings.add(near(centers.get(random.nextInt(CLUSTERS)), random));
+        }
+
+        // 两个存储使用相同的 id，以便比较结果
+        // Both stores use the same ids so that their results can be compared
+        InMemoryEmbeddingStore<TextSegment> exactStore = new InMemoryEmbeddingStore<>();
+        List<String> ids = exactStore.generateIds(SEGMENTS);
+        exactStore.addAll(ids, embeddings, segments);
+
+        System.out.printf("%d segments, %d queries, dimension %d%n", SEGMENTS, QUERIES, DIMENSION);
+        System.out.printf("%-28s %10s %16s%n", "store", "recall@" + MAX_RESULTS, "latency (us)");
+        System.out.printf("%-28s %10.3f %16.0f%n", "exact (InMemory)", 1.0, latencyMicros(exactStore, queryEmbeddings));
+
+        // efSearch 在构建存储时固定，因此每个值各建一个存储
+        // efSearch is fixed when the store is built, so every value gets a store of its own
+        for (int efSearch : new int[]{16, 64, 256, 512}) {
+            HnswEmbeddingStore hnswStore = HnswEmbeddingStore.builder()
+                    .m(16)
+                    .efConstruction(200)
+                    .efSearch(efSearch)
+                    .build();
+            long start = System.nanoTime();
+            hnswStore.addAll(ids, embeddings, segments);
+            long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+            double recall = recall(exactStore, hnswStore, queryEmbeddings, MAX_RESULTS);
+            double latency = latencyMicros(hnswStore, queryEmbeddings);
+            System.out.printf("%-28s %10.3f %16.0f   (built in %d ms)%n",
+                    "HNSW efSearch " + efSearch, recall, latency, buildMillis);
+        }
+    }
+
+    private static double latencyMicros(EmbeddingStore<TextSegment> store, List<Embedding> queryEmbeddings) {
+        // 先预热，再计时
+        // Warm up first, then measure
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (Embedding queryEmbedding : queryEmbeddings) {
+                store.search(request(queryEmbedding));
+            }
+            if (round == 1) {
+                return (System.nanoTime() - start) / 1_000.0 / queryEmbeddings.size();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private static EmbeddingSearchRequest request(Embedding queryEmbedding) {
+        return EmbeddingSearchRequest.builder()
+                .queryEmbedding(queryEmbedding)
+                .maxResults(MAX_RESULTS)
+                .build();
+    }
+
+    private static Embedding near(float[] center, Random random) {
+        float[] noise = gaussian(random, 3);
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = center[i] + noise[i];
+        }
+        Embedding embedding = Embedding.from(vector);
+        embedding.normalize();
+        return embedding;
+    }
+
+    private static float[] gaussian(Random random, double deviation) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) (random.nextGaussian() * deviation);
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,127 @@
+package _5_performance;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import shared.store.IvfEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static shared.Utils.recall;
+
+/**
+ * IVF 嵌入存储的召回率与查询延迟对比
+ * Compares recall and query latency of {@link IvfEmbeddingStore} for several {@code nprobe} values
+ * against the exact {@link InMemoryEmbeddingStore}, without a filter and with a filter that matches 10%
+ * of the segments.
+ * <br>
+ * The corpus is synthetic, like in {@link _06_Hnsw_Embedding_Store_Recall_Example}: normalized vectors scattered
+ * widely around random cluster centers, a pessimistic stand-in for real embeddings. Every segment belongs to
+ * one of ten tenants, and the filtered searches only look at one of them.
+ */
+public class _07_Ivf_Embedding_Store_Recall_Example {
+
+    private static final int SEGMENTS = 10_000;
+    private static final int QUERIES = 200;
+    private static final int DIMENSION = 384;
+    private static final int CLUSTERS = 200;
+    private static final int TENANTS = 10;
+    private static final int MAX_RESULTS = 10;
+
+    public static void main(String[] args) {
+
+        Random random = new Random(42);
+        List<float[]> centers = new ArrayList<>();
+        for (int i = 0; i < CLUSTERS; i++) {
+            centers.add(gaussian(random, 1));
+        }
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < SEGMENTS; i++) {
+            embeddings.add(near(centers.get(random.nextInt(CLUSTERS)), random));
+            segments.add(TextSegment.from("segment " + i, new Metadata().put("tenant", random.nextInt(TENANTS))));
+        }
+        List<Embedding> queryEmbeddings = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++) {
+            queryEmbeddings.add(near(centers.get(random.nextInt(CLUSTERS)), random));
+        }
+        Filter filter = metadataKey("tenant").isEqualTo(3);
+
+        // 两个存储使用相同的 id，以便比较结果
+        // Both stores use the same ids so that their results can be compared
+        InMemoryEmbeddingStore<TextSegment> exactStore = new InMemoryEmbeddingStore<>();
+        List<String> ids = exactStore.generateIds(SEGMENTS);
+        exactStore.addAll(ids, embeddings, segments);
+
+        System.out.printf("%d segments, %d queries, dimension %d, filter matches 1 of %d tenants%n",
+                SEGMENTS, QUERIES, DIMENSION, TENANTS);
+        System.out.printf("%-20s %10s %14s %18s %22s%n", "store", "recall@" + MAX_RESULTS,
+                "latency (us)", "filtered recall", "filtered latency (us)");
+        System.out.printf("%-20s %10.3f %14.0f %18.3f %22.0f%n", "exact (InMemory)",
+                1.0, latencyMicros(exactStore, queryEmbeddings, null),
+                1.0, latencyMicros(exactStore, queryEmbeddings, filter));
+
+        for (int nprobe : new int[]{4, 8, 16, 32}) {
+            IvfEmbeddingStore ivfStore = IvfEmbeddingStore.builder()
+                    .nprobe(nprobe)
+                    .build();
+            ivfStore.addAll(ids, embeddings, segments);
+
+            System.out.printf("%-20s %10.3f %14.0f %18.3f %22.0f%n", "IVF nprobe " + nprobe,
+                    recall(exactStore, ivfStore, queryEmbeddings, MAX_RESULTS),
+                    latencyMicros(ivfStore, queryEmbeddings, null),
+                    recall(exactStore, ivfStore, queryEmbeddings, MAX_RESULTS, filter),
+                    latencyMicros(ivfStore, queryEmbeddings, filter));
+        }
+    }
+
+    private static double latencyMicros(EmbeddingStore<TextSegment> store, List<Embedding> queryEmbeddings,
+                                        Filter filter) {
+        // 先预热，再计时
+        // Warm up first, then measure
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (Embedding queryEmbedding : queryEmbeddings) {
+                store.search(request(queryEmbedding, filter));
+            }
+            if (round == 1) {
+                return (System.nanoTime() - start) / 1_000.0 / queryEmbeddings.size();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private static EmbeddingSearchRequest request(Embedding queryEmbedding, Filter filter) {
+        return EmbeddingSearchRequest.builder()
+                .queryEmbedding(queryEmbedding)
+                .maxResults(MAX_RESULTS)
+                .filter(filter)
+                .build();
+    }
+
+    private static Embedding near(float[] center, Random random) {
+        float[] noise = gaussian(random, 3);
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = center[i] + noise[i];
+        }
+        Embedding embedding = Embedding.from(vector);
+        embedding.normalize();
+        return embedding;
+    }
+
+    private static float[] gaussian(Random random, double deviation) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) (random.nextGaussian() * deviation);
+        }
+        return vector;
+    }
+}
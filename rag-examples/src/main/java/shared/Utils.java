@@ -1,5 +1,11 @@
 package shared;
 
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,9 +15,13 @@ import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
 
 import static dev.langchain4j.internal.Utils.getOrDefault;
+import static java.util.stream.Collectors.toCollection;
 
 public class Utils {
 
@@ -55,4 +65,46 @@ public class Utils {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * 近似存储的召回率：精确存储的前 k 个结果中也被近似存储返回的比例
+     * Recall@k of an approximate store: the share of the exact store's top-k that the approximate store also returns.
+     * Both stores must hold the same entries under the same ids
+     */
+    public static double recall(EmbeddingStore<TextSegment> exactStore,
+                                EmbeddingStore<TextSegment> approximateStore,
+                                List<Embedding> queryEmbeddings,
+                                int maxResults) {
+        return recall(exactStore, approximateStore, queryEmbeddings, maxResults, null);
+    }
+
+    /**
+     * 带过滤条件的召回率
+     * Recall@k of an approximate store for searches with the given filter ({@code null} for none)
+     */
+    public static double recall(EmbeddingStore<TextSegment> exactStore,
+                                EmbeddingStore<TextSegment> approximateStore,
+                                List<Embedding> queryEmbeddings,
+                                int maxResults,
+                                Filter filter) {
+        int found = 0;
+        int expected = 0;
+        for (Embedding queryEmbedding : queryEmbeddings) {
+            EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(queryEmbedding)
+                    .maxResults(maxResults)
+                    .filter(filter)
+                    .build();
+            Set<String> exactIds = ids(exactStore.search(request).matches());
+            Set<String> approximateIds = ids(approximateStore.search(request).matches());
+            expected += exactIds.size();
+            exactIds.retainAll(approximateIds);
+            found += exactIds.size();
+        }
+        return expected == 0 ? 1.0 : (double) found / expected;
+    }
+
+    private static Set<String> ids(List<EmbeddingMatch<TextSegment>> matches) {
+        return matches.stream().map(EmbeddingMatch::embeddingId).collect(toCollection(HashSet::new));
+    }
 }
@@ -0,0 +1,93 @@
+package shared.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+
+/**
+ * 按长度分桶批量嵌入的嵌入模型装饰器
+ * An {@link EmbeddingModel} decorator that embeds segments in buckets of similar token length
+ * instead of in arrival order, and returns the embeddings in the original order.
+ * <br>
+ * Segments are sorted by their token count and grouped so that the padded size of every bucket
+ * (number of segments times the longest segment) stays within {@code maxBatchTokens}. One long segment
+ * therefore no longer inflates a whole batch of short ones. This only pays off for models that pad a batch
+ * to its longest input, such as remote or GPU-batched models.
+ * <br>
+ * Do not use it with the in-process ONNX models: they encode every text on its own, so there is no padding
+ * to save, and estimating the lengths is one more tokenization of every segment. Measured on 300 segments
+ * of mixed length with {@code BgeSmallEnV15QuantizedEmbeddingModel}, it took as long as {@code embedAll}.
+ */
+public class LengthBucketedEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final int maxBatchTokens;
+
+    /**
+     * 长度用被装饰模型自己的分词器估算，其他分词器的词元数与模型的填充长度不一致
+     * Lengths must be estimated with the tokenizer of the delegate model: token counts of another tokenizer
+     * do not match the padding the model actually does
+     */
+    public LengthBucketedEmbeddingModel(EmbeddingModel delegate,
+                                        TokenCountEstimator tokenCountEstimator,
+                                        int maxBatchTokens) {
+        this.delegate = ensureNotNull(delegate, "delegate");
+        this.tokenCountEstimator = ensureNotNull(tokenCountEstimator, "tokenCountEstimator");
+        this.maxBatchTokens = ensureGreaterThanZero(maxBatchTokens, "maxBatchTokens");
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        if (textSegments.size() <= 1) {
+            return delegate.embedAll(textSegments);
+        }
+
+        int[] tokenCounts = textSegments.stream()
+                .mapToInt(textSegment -> tokenCountEstimator.estimateTokenCountInText(textSegment.text()))
+                .toArray();
+        Integer[] order = IntStream.range(0, textSegments.size()).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.comparingInt(index -> tokenCounts[index]));
+
+        Embedding[] embeddings = new Embedding[textSegments.size()];
+        TokenUsage tokenUsage = null;
+        int from = 0;
+        while (from < order.length) {
+            // 按长度升序，最后加入的片段决定该桶填充后的长度
+            // Sorted ascending, so the segment added last sets the padded length of the bucket
+            int to = from + 1;
+            while (to < order.length && (long) (to - from + 1) * Math.max(1, tokenCounts[order[to]]) <= maxBatchTokens) {
+                to++;
+            }
+
+            List<TextSegment> bucket = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                bucket.add(textSegments.get(order[i]));
+            }
+            Response<List<Embedding>> response = delegate.embedAll(bucket);
+            for (int i = from; i < to; i++) {
+                embeddings[order[i]] = response.content().get(i - from);
+            }
+            tokenUsage = TokenUsage.sum(tokenUsage, response.tokenUsage());
+            from = to;
+        }
+        return Response.from(Arrays.asList(embeddings), tokenUsage);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+}
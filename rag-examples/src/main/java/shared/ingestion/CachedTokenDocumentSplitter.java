@@ -0,0 +1,197 @@
+package shared.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.TokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+
+/**
+ * 缓存令牌计数的按令牌切分器
+ * A token-aware {@link DocumentSplitter} that counts the tokens of a document once, instead of re-counting
+ * every paragraph, line, sentence and word it tries like {@link DocumentSplitters#recursive(int, int, TokenCountEstimator)}.
+ * <br>
+ * The text is cut into pieces the way BPE tokenizers pre-tokenize it (words with their leading space, numbers,
+ * punctuation, whitespace). Tokens never cross those pieces, so the token count of any span is the sum of the
+ * counts of its pieces. Each distinct piece is counted once with the {@link TokenCountEstimator} and the count
+ * is cached across documents; prefix sums then give the count of any span in constant time. The splitter
+ * packs paragraphs, then lines, then sentences, then pieces into segments of at most
+ * {@code maxSegmentSizeInTokens}, like the recursive splitter, but on piece offsets mapped back to characters.
+ * <br>
+ * For tokenizers that do not pre-tokenize like this, the sum is an estimate. Segments do not overlap.
+ */
+public class CachedTokenDocumentSplitter implements DocumentSplitter {
+
+    private static final Pattern PIECE = Pattern.compile(
+            "'(?i:[sdmt]|ll|ve|re)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+");
+    private static final Pattern PARAGRAPH = Pattern.compile("\\s*(?>\\r?\\n\\s*){2,}");
+    private static final Pattern LINE = Pattern.compile("\\s*\\r?\\n\\s*");
+    private static final Pattern SENTENCE = Pattern.compile("(?<=[.!?])\\s+");
+    private static final Pattern[] LEVELS = {PARAGRAPH, LINE, SENTENCE};
+
+    /**
+     * 缓存的片段数上限，超过后清空
+     * Maximum number of cached piece counts; the cache is cleared when it is full
+     */
+    private static final int MAX_CACHED_PIECES = 100_000;
+
+    private final int maxSegmentSizeInTokens;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final Map<String, Integer> tokenCounts = new ConcurrentHashMap<>();
+
+    public CachedTokenDocumentSplitter(int maxSegmentSizeInTokens, TokenCountEstimator tokenCountEstimator) {
+        this.maxSegmentSizeInTokens = ensureGreaterThanZero(maxSegmentSizeInTokens, "maxSegmentSizeInTokens");
+        this.tokenCountEstimator = ensureNotNull(tokenCountEstimator, "tokenCountEstimator");
+    }
+
+    @Override
+    public List<TextSegment> split(Document document) {
+        Text text = tokenize(document.text());
+        List<int[]> spans = new ArrayList<>();
+        split(text, 0, text.pieceCount(), 0, spans);
+
+        List<TextSegment> segments = new ArrayList<>(spans.size());
+        for (int[] span : spans) {
+            String segmentText = text.substring(span[0], span[1]).trim();
+            if (!segmentText.isEmpty()) {
+                segments.add(TextSegment.from(segmentText,
+                        document.metadata().copy().put("index", String.valueOf(segments.size()))));
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * 切分片段区间 [from, to)，从给定层级的分隔符开始尝试
+     * Splits the pieces [from, to), trying the separators of the given level and finer ones
+     */
+    private void split(Text text, int from, int to, int level, List<int[]> spans) {
+        if (text.tokens(from, to) <= maxSegmentSizeInTokens) {
+            spans.add(new int[]{from, to});
+            return;
+        }
+
+        // 在该层级的分隔处切开，然后贪心地合并相邻部分
+        // Cut at the separators of this level, then greedily merge neighbouring parts
+        int[] breaks = level < LEVELS.length ? text.breaks(LEVELS[level], from, to) : null;
+        int start = from;
+        int end = from;
+        int partCount = breaks == null ? to - from : breaks.length + 1;
+        for (int i = 0; i < partCount; i++) {
+            int partEnd = breaks == null ? from + i + 1 : (i < breaks.length ? breaks[i] : to);
+            if (text.tokens(start, partEnd) <= maxSegmentSizeInTokens) {
+                end = partEnd;
+                continue;
+            }
+            if (end > start) {
+                spans.add(new int[]{start, end});
+                start = end;
+            }
+            if (text.tokens(start, partEnd) <= maxSegmentSizeInTokens) {
+                end = partEnd;
+            } else if (breaks != null) {
+                split(text, start, partEnd, level + 1, spans);
+                start = end = partEnd;
+            } else {
+                // 单个片段超过上限，只能单独成段
+                // A single piece over the limit becomes a segment of its own
+                spans.add(new int[]{start, partEnd});
+                start = end = partEnd;
+            }
+        }
+        if (end > start) {
+            spans.add(new int[]{start, end});
+        }
+    }
+
+    private Text tokenize(String text) {
+        List<Integer> starts = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        Matcher matcher = PIECE.matcher(text);
+        while (matcher.find()) {
+            starts.add(matcher.start());
+            counts.add(tokenCount(matcher.group()));
+        }
+
+        int[] pieceStarts = new int[starts.size() + 1];
+        long[] prefixTokens = new long[starts.size() + 1];
+        for (int i = 0; i < starts.size(); i++) {
+            pieceStarts[i] = starts.get(i);
+            prefixTokens[i + 1] = prefixTokens[i] + counts.get(i);
+        }
+        pieceStarts[starts.size()] = text.length();
+        return new Text(text, pieceStarts, prefixTokens);
+    }
+
+    private int tokenCount(String piece) {
+        Integer count = tokenCounts.get(piece);
+        if (count == null) {
+            count = tokenCountEstimator.estimateTokenCountInText(piece);
+            if (tokenCounts.size() >= MAX_CACHED_PIECES) {
+                tokenCounts.clear();
+            }
+            tokenCounts.put(piece, count);
+        }
+        return count;
+    }
+
+    /**
+     * 已分词的文本：片段的起始字符位置和令牌数的前缀和
+     * A tokenized text: the character offset where each piece starts, and prefix sums of the token counts
+     */
+    private record Text(String text, int[] pieceStarts, long[] prefixTokens) {
+
+        int pieceCount() {
+            return pieceStarts.length - 1;
+        }
+
+        long tokens(int from, int to) {
+            return prefixTokens[to] - prefixTokens[from];
+        }
+
+        String substring(int from, int to) {
+            return text.substring(pieceStarts[from], pieceStarts[to]);
+        }
+
+        /**
+         * 分隔符所在的片段位置，限于 (from, to) 之内
+         * Piece indexes, strictly between from and to, at which the separators end
+         */
+        int[] breaks(Pattern separator, int from, int to) {
+            Matcher matcher = separator.matcher(text).region(pieceStarts[from], pieceStarts[to]);
+            int[] breaks = new int[8];
+            int count = 0;
+            while (matcher.find()) {
+                // the separator ends inside the piece that carries the next word's leading space, e.g. " How"
+                int piece = pieceContaining(matcher.end());
+                if (piece > from && piece < to && (count == 0 || piece > breaks[count - 1])) {
+                    if (count == breaks.length) {
+                        breaks = Arrays.copyOf(breaks, count * 2);
+                    }
+                    breaks[count++] = piece;
+                }
+            }
+            return Arrays.copyOf(breaks, count);
+        }
+
+        /**
+         * 包含给定字符位置的片段
+         * The piece that contains the character offset
+         */
+        private int pieceContaining(int offset) {
+            int index = Arrays.binarySearch(pieceStarts, offset);
+            return index >= 0 ? index : -index - 2;
+        }
+    }
+}
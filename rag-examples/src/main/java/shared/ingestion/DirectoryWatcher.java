@@ -0,0 +1,230 @@
+package shared.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.loadDocument;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * 目录监视器，文件变化后实时更新嵌入存储
+ * Keeps an embedding store up to date with a directory while the application is running.
+ * <br>
+ * On {@link #start()}, the directory (including subdirectories) is synced once with
+ * {@link IncrementalIngestor#sync(java.util.Collection)}. After that, a background thread listens to file events
+ * through a {@link WatchService}. Editors and copy tools usually produce a burst of events for one change,
+ * so the events of a file are debounced: the file is re-ingested only once it has been quiet for
+ * {@code debounce}. Files that match the {@link PathMatcher} (relative to the directory, like in
+ * {@link dev.langchain4j.data.document.loader.FileSystemDocumentLoader#loadDocuments(Path, PathMatcher)})
+ * are then added or replaced, deleted files are removed.
+ * <br>
+ * Searches are never blocked: the new segments of a changed file are added before its old segments are removed.
+ * The ingestor must use the default document ids, i.e. the absolute paths of the files.
+ */
+public class DirectoryWatcher implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+    private final Path directory;
+    private final PathMatcher pathMatcher;
+    private final DocumentParser documentParser;
+    private final IncrementalIngestor ingestor;
+    private final long debounceNanos;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final Map<Path, Long> pendingFiles = new HashMap<>();
+    private final Thread worker;
+
+    public DirectoryWatcher(Path directory,
+                            PathMatcher pathMatcher,
+                            DocumentParser documentParser,
+                            IncrementalIngestor ingestor,
+                            Duration debounce) {
+        this.directory = ensureNotNull(directory, "directory").toAbsolutePath();
+        this.pathMatcher = ensureNotNull(pathMatcher, "pathMatcher");
+        this.documentParser = ensureNotNull(documentParser, "documentParser");
+        this.ingestor = ensureNotNull(ingestor, "ingestor");
+        this.debounceNanos = ensureNotNull(debounce, "debounce").toNanos();
+        try {
+            this.watchService = directory.getFileSystem().newWatchService();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.worker = new Thread(this::run, "directory-watcher");
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * 同步目录，然后开始监视
+     * Syncs the directory with the store, then starts watching it
+     */
+    public void start() {
+        // 先注册再同步，这样同步期间发生的变化不会丢失
+        // Register first and sync afterward, so that changes made during the sync are not missed
+        register(directory);
+        resync();
+        worker.start();
+    }
+
+    @Override
+    public void close() {
+        worker.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("Failed to close the watch service", e);
+        }
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = pendingFiles.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(debounceNanos, NANOSECONDS);
+                try {
+                    if (key != null) {
+                        handle(key);
+                    }
+                    ingestQuietFiles();
+                } catch (RuntimeException e) {
+                    // 例如新目录在注册前又被删除
+                    // E.g. a new directory that was deleted before it could be registered
+                    log.warn("Failed to process file events", e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private void handle(WatchKey key) {
+        Path watchedDirectory = watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // 事件丢失，只能重新同步整个目录
+                // Events were lost, only a full sync can tell what changed
+                pendingFiles.clear();
+                resync();
+                continue;
+            }
+            Path path = watchedDirectory.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                // 新目录中的文件可能在注册前就已创建
+                // Files in a new directory may have been created before it was registered
+                register(path);
+                walk(path).forEach(file -> pendingFiles.put(file, System.nanoTime()));
+            } else {
+                pendingFiles.put(path, System.nanoTime());
+            }
+        }
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    private void ingestQuietFiles() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, Long>> iterator = pendingFiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Long> pendingFile = iterator.next();
+            if (now - pendingFile.getValue() >= debounceNanos) {
+                iterator.remove();
+                ingest(pendingFile.getKey());
+            }
+        }
+    }
+
+    private void ingest(Path path) {
+        try {
+            if (Files.isRegularFile(path)) {
+                if (matches(path) && ingestor.upsert(loadDocument(path, documentParser))) {
+                    log.info("Ingested {}", path);
+                }
+            } else if (!Files.exists(path)) {
+                // 可能是文件，也可能是整个目录
+                // Either a file or a whole directory was deleted
+                String prefix = path + path.getFileSystem().getSeparator();
+                for (String documentId : ingestor.documentIds()) {
+                    if ((documentId.equals(path.toString()) || documentId.startsWith(prefix))
+                            && ingestor.remove(documentId)) {
+                        log.info("Removed {}", documentId);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // 一个文件失败不应停止监视
+            // A file that fails to load or embed must not stop the watcher, it is retried on its next change
+            log.warn("Failed to ingest {}", path, e);
+        }
+    }
+
+    private void resync() {
+        List<Document> documents = new ArrayList<>();
+        Set<String> failedDocumentIds = new HashSet<>();
+        for (Path file : walk(directory)) {
+            if (matches(file)) {
+                try {
+                    documents.add(loadDocument(file, documentParser));
+                } catch (RuntimeException e) {
+                    // 例如正在写入的文件：保留其已有片段，稍后重试
+                    // E.g. a file caught mid-write: keep its current segments and retry it later
+                    log.warn("Failed to load {}, retrying later", file, e);
+                    failedDocumentIds.add(file.toString());
+                    pendingFiles.put(file, System.nanoTime());
+                }
+            }
+        }
+        IncrementalIngestor.Report report = ingestor.sync(documents, failedDocumentIds);
+        log.info("Synced {}: {}", directory, report);
+    }
+
+    private boolean matches(Path file) {
+        return pathMatcher.matches(directory.relativize(file));
+    }
+
+    private void register(Path root) {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.filter(Files::isDirectory).toList()) {
+                watchedDirectories.put(path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Path> walk(Path root) {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package shared.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * 增量摄取器
+ * Re-ingests a corpus by embedding only what changed since the previous run.
+ * <br>
+ * A manifest file maps every ingested document id to the hash of its content and to the ids of its segments
+ * in the {@link EmbeddingStore}. {@link #sync(Collection)} compares the given documents with the manifest:
+ * new and changed documents are split and embedded, the old segments of changed documents are replaced,
+ * unchanged documents are skipped, and the segments of documents that are no longer there are removed.
+ * The cost of a refresh is therefore proportional to the change, not to the size of the corpus.
+ * <br>
+ * The manifest describes the content of the store, so both must be persisted together: a store that starts
+ * empty needs an empty (or deleted) manifest. The store must support {@link EmbeddingStore#removeAll(Collection)}.
+ * <br>
+ * Segment ids are derived from the document id, the content hash and the position of the segment. If a run
+ * stops after adding segments but before writing the manifest, the next run of the same content produces the
+ * same ids and removes those segments before adding them again, so the store never collects duplicates.
+ */
+public class IncrementalIngestor {
+
+    private final DocumentSplitter documentSplitter;
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final Function<Document, String> documentIdProvider;
+    private final Path manifestFile;
+
+    private final Map<String, Entry> manifest;
+
+    private IncrementalIngestor(Builder builder) {
+        this.documentSplitter = ensureNotNull(builder.documentSplitter, "documentSplitter");
+        this.embeddingModel = ensureNotNull(builder.embeddingModel, "embeddingModel");
+        this.embeddingStore = ensureNotNull(builder.embeddingStore, "embeddingStore");
+        this.documentIdProvider = ensureNotNull(builder.documentIdProvider, "documentIdProvider");
+        this.manifestFile = ensureNotNull(builder.manifestFile, "manifestFile");
+        this.manifest = readManifest(manifestFile);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 将存储与给定的完整文档集合同步，不在集合中的文档会被删除
+     * Brings the store in line with the given documents, which are the whole corpus:
+     * documents that were ingested before but are not given anymore are removed.
+     */
+    public Report sync(Collection<Document> documents) {
+        return sync(documents, Set.of());
+    }
+
+    /**
+     * 同上，但保留给定 id 的文档不变，例如暂时无法加载的文件
+     * Like {@link #sync(Collection)}, but documents with the given ids are left as they are even though they are not
+     * given, e.g. files that could not be loaded this time and must not be mistaken for deleted ones.
+     */
+    public synchronized Report sync(Collection<Document> documents, Set<String> retainedDocumentIds) {
+        Map<String, Document> changed = new LinkedHashMap<>();
+        Map<String, String> hashes = new LinkedHashMap<>();
+        Set<String> seen = new HashSet<>();
+        int added = 0;
+        int unchanged = 0;
+
+        for (Document document : documents) {
+            String documentId = documentId(document);
+            if (!seen.add(documentId)) {
+                throw new IllegalArgumentException("Duplicate document id: " + documentId);
+            }
+            String hash = hash(document);
+            Entry entry = manifest.get(documentId);
+            if (entry == null) {
+                added++;
+            } else if (entry.hash().equals(hash)) {
+                unchanged++;
+                continue;
+            }
+            changed.put(documentId, document);
+            hashes.put(documentId, hash);
+        }
+
+        List<String> deleted = manifest.keySet().stream()
+                .filter(documentId -> !seen.contains(documentId) && !retainedDocumentIds.contains(documentId))
+                .toList();
+
+        TokenUsage tokenUsage = replace(changed, hashes, deleted);
+        writeManifest();
+        return new Report(added, changed.size() - added, unchanged, deleted.size(),
+                changed.keySet().stream().mapToInt(documentId -> manifest.get(documentId).segmentIds().size()).sum(),
+                tokenUsage);
+    }
+
+    /**
+     * 添加或替换单个文档，内容未变时不做任何事
+     * Adds or replaces a single document. Returns {@code false} if it is already ingested with the same content.
+     */
+    public synchronized boolean upsert(Document document) {
+        String documentId = documentId(document);
+        String hash = hash(document);
+        Entry entry = manifest.get(documentId);
+        if (entry != null && entry.hash().equals(hash)) {
+            return false;
+        }
+        replace(Map.of(documentId, document), Map.of(documentId, hash), List.of());
+        writeManifest();
+        return true;
+    }
+
+    /**
+     * 删除单个文档的所有片段
+     * Removes all segments of a document. Returns {@code false} if the document was not ingested.
+     */
+    public synchronized boolean remove(String documentId) {
+        if (!manifest.containsKey(documentId)) {
+            return false;
+        }
+        replace(Map.of(), Map.of(), List.of(documentId));
+        writeManifest();
+        return true;
+    }
+
+    /**
+     * 文档在清单中的 id
+     * The id under which the document is tracked in the manifest
+     */
+    public String documentId(Document document) {
+        String documentId = documentIdProvider.apply(document);
+        if (documentId == null) {
+            throw new IllegalArgumentException("No document id for document: " + document.metadata());
+        }
+        return documentId;
+    }
+
+    /**
+     * 已摄取的文档 id
+     * Ids of the ingested documents
+     */
+    public synchronized Set<String> documentIds() {
+        return Set.copyOf(manifest.keySet());
+    }
+
+    private TokenUsage replace(Map<String, Document> documents, Map<String, String> hashes, List<String> deleted) {
+        List<TextSegment> segments = new ArrayList<>();
+        Map<String, Integer> segmentCounts = new LinkedHashMap<>();
+        documents.forEach((documentId, document) -> {
+            List<TextSegment> documentSegments = documentSplitter.split(document);
+            segments.addAll(documentSegments);
+            segmentCounts.put(documentId, documentSegments.size());
+        });
+
+        // 先嵌入，成功后再修改存储，这样嵌入失败时存储和清单保持不变
+        // Embed first and only then touch the store, so that a failed embedding leaves store and manifest as they were
+        TokenUsage tokenUsage = null;
+        List<Embedding> embeddings = List.of();
+        if (!segments.isEmpty()) {
+            Response<List<Embedding>> response = embeddingModel.embedAll(segments);
+            embeddings = response.content();
+            tokenUsage = response.tokenUsage();
+        }
+
+        List<String> ids = new ArrayList<>(segments.size());
+        segmentCounts.forEach((documentId, segmentCount) -> {
+            for (int i = 0; i < segmentCount; i++) {
+                ids.add(segmentId(documentId, hashes.get(documentId), i));
+            }
+        });
+
+        // 先添加新片段再删除旧片段，并发的检索不会看到文档缺失。
+        // 之前中断的运行可能已经写入了相同 id 的片段，先删除它们
+        // Add the new segments before removing the old ones, so that concurrent searches never miss the document.
+        // A run that stopped before writing the manifest may have stored segments with the same ids: remove them first
+        if (!segments.isEmpty()) {
+            embeddingStore.removeAll(ids);
+            embeddingStore.addAll(ids, embeddings, segments);
+        }
+
+        List<String> obsoleteIds = new ArrayList<>();
+        for (String documentId : documents.keySet()) {
+            Entry entry = manifest.get(documentId);
+            if (entry != null) {
+                obsoleteIds.addAll(entry.segmentIds());
+            }
+        }
+        for (String documentId : deleted) {
+            obsoleteIds.addAll(manifest.get(documentId).segmentIds());
+        }
+        // 内容未变的文档重新摄取时得到相同的 id，不能删除刚添加的片段
+        // A document ingested again with the same content gets the same ids, which must not be removed again
+        obsoleteIds.removeAll(new HashSet<>(ids));
+        if (!obsoleteIds.isEmpty()) {
+            embeddingStore.removeAll(obsoleteIds);
+        }
+
+        deleted.forEach(manifest::remove);
+        int from = 0;
+        for (Map.Entry<String, Integer> segmentCount : segmentCounts.entrySet()) {
+            String documentId = segmentCount.getKey();
+            int to = from + segmentCount.getValue();
+            manifest.put(documentId, new Entry(hashes.get(documentId), List.copyOf(ids.subList(from, to))));
+            from = to;
+        }
+        return tokenUsage;
+    }
+
+    /**
+     * 由文档 id、内容哈希和片段序号确定的片段 id，相同内容重跑时保持不变
+     * A segment id derived from the document id, the content hash and the position of the segment,
+     * the same whenever the same content is ingested
+     */
+    private static String segmentId(String documentId, String hash, int index) {
+        return UUID.nameUUIDFromBytes((documentId + "#" + hash + "#" + index).getBytes(UTF_8)).toString();
+    }
+
+    private static String defaultDocumentId(Document document) {
+        String fileName = document.metadata().getString(Document.FILE_NAME);
+        String directory = document.metadata().getString(Document.ABSOLUTE_DIRECTORY_PATH);
+        if (fileName == null) {
+            return null;
+        }
+        return directory == null ? fileName : Path.of(directory, fileName).toString();
+    }
+
+    /**
+     * 文本和元数据的 SHA-256 哈希，元数据按键排序
+     * SHA-256 hash of the text and of the metadata, sorted by key
+     */
+    private static String hash(Document document) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(document.text().getBytes(UTF_8));
+            new TreeMap<>(document.metadata().toMap()).forEach((key, value) -> {
+                digest.update((byte) 0);
+                digest.update(key.getBytes(UTF_8));
+                digest.update((byte) 0);
+                digest.update(String.valueOf(value).getBytes(UTF_8));
+            });
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 清单每行一个文档：编码后的文档 id、哈希、逗号分隔的片段 id
+     * One line per document: URL-encoded document id, content hash and comma-separated segment ids, tab-separated
+     */
+    private static Map<String, Entry> readManifest(Path manifestFile) {
+        Map<String, Entry> manifest = new LinkedHashMap<>();
+        if (!Files.exists(manifestFile)) {
+            return manifest;
+        }
+        try {
+            for (String line : Files.readAllLines(manifestFile, UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 3) {
+                    throw new IllegalStateException("Corrupt manifest " + manifestFile + ": " + line);
+                }
+                List<String> segmentIds = fields[2].isEmpty() ? List.of() : Arrays.asList(fields[2].split(","));
+                manifest.put(URLDecoder.decode(fields[0], UTF_8), new Entry(fields[1], List.copyOf(segmentIds)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return manifest;
+    }
+
+    /**
+     * 先写临时文件再原子替换，避免崩溃时留下半个清单
+     * Writes a temporary file and atomically replaces the manifest, so that a crash never leaves half a manifest
+     */
+    private void writeManifest() {
+        List<String> lines = new ArrayList<>(manifest.size());
+        manifest.forEach((documentId, entry) -> lines.add(URLEncoder.encode(documentId, UTF_8)
+                + "\t" + entry.hash() + "\t" + String.join(",", entry.segmentIds())));
+        try {
+            Path directory = manifestFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporaryFile = Files.createTempFile(directory, manifestFile.getFileName().toString(), ".tmp");
+            Files.write(temporaryFile, lines, UTF_8);
+            Files.move(temporaryFile, manifestFile, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record Entry(String hash, List<String> segmentIds) {
+    }
+
+    /**
+     * 一次同步的结果
+     * The outcome of one {@link #sync(Collection)}
+     *
+     * @param added            number of new documents
+     * @param changed          number of documents whose content changed
+     * @param unchanged        number of documents that were skipped
+     * @param removed          number of documents whose segments were removed
+     * @param embeddedSegments number of segments embedded and stored
+     * @param tokenUsage       token usage of the embedding model, if it reports one
+     */
+    public record Report(int added, int changed, int unchanged, int removed, int embeddedSegments,
+                         TokenUsage tokenUsage) {
+    }
+
+    public static class Builder {
+
+        private DocumentSplitter documentSplitter;
+        private EmbeddingModel embeddingModel;
+        private EmbeddingStore<TextSegment> embeddingStore;
+        private Function<Document, String> documentIdProvider = IncrementalIngestor::defaultDocumentId;
+        private Path manifestFile;
+
+        public Builder documentSplitter(DocumentSplitter documentSplitter) {
+            this.documentSplitter = documentSplitter;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder embeddingStore(EmbeddingStore<TextSegment> embeddingStore) {
+            this.embeddingStore = embeddingStore;
+            return this;
+        }
+
+        /**
+         * 文档 id 的来源，默认使用文件的绝对路径
+         * Extracts the id of a document. Defaults to the absolute path of the file the document was loaded from,
+         * taken from the {@link Document#ABSOLUTE_DIRECTORY_PATH} and {@link Document#FILE_NAME} metadata.
+         */
+        public Builder documentIdProvider(Function<Document, String> documentIdProvider) {
+            this.documentIdProvider = documentIdProvider;
+            return this;
+        }
+
+        /**
+         * 清单文件，不存在时视为空
+         * The manifest file. A missing file is an empty manifest.
+         */
+        public Builder manifestFile(Path manifestFile) {
+            this.manifestFile = manifestFile;
+            return this;
+        }
+
+        public IncrementalIngestor build() {
+            return new IncrementalIngestor(this);
+        }
+    }
+}
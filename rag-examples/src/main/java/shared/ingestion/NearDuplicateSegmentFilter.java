@@ -0,0 +1,334 @@
+package shared.ingestion;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.data.segment.TextSegmentTransformer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static dev.langchain4j.data.document.Document.ABSOLUTE_DIRECTORY_PATH;
+import static dev.langchain4j.data.document.Document.FILE_NAME;
+import static dev.langchain4j.internal.ValidationUtils.ensureBetween;
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 基于 MinHash 的近似重复片段过滤器
+ * A {@link TextSegmentTransformer} that drops segments that are near-duplicates of a segment seen before,
+ * so that they are neither embedded nor stored. Use it as the text segment transformer of an ingestor.
+ * <br>
+ * Each segment is reduced to its set of word shingles (lower-cased {@code shingleSize}-word sequences), and
+ * the set to a MinHash signature of {@code hashes} values. Two segments are near-duplicates when the share of
+ * equal values in their signatures, an estimate of the Jaccard similarity of their shingles, reaches
+ * {@code threshold}. Candidates are found with locality-sensitive hashing: the signature is cut into
+ * {@code bands} bands, and only segments that share at least one band are compared.
+ * <br>
+ * Every kept segment gets a {@value #GROUP} metadata entry identifying its group. The group is a name-based UUID
+ * of the directory, file name, index and text of the kept segment, so ingesting the same documents again gives
+ * the same groups. A dropped segment is recorded as a member of the group of the segment it duplicates, see
+ * {@link #duplicates()}.
+ * <br>
+ * {@link #transformAll(List)}, which ingestors call with all segments of a run, also stores the sources of the
+ * segments dropped in favour of a kept segment in its {@value #DUPLICATE_SOURCES} metadata entry: one line per
+ * dropped segment, with its file name and index ({@code terms.txt#3}), so a search result leads back to every
+ * document that contains the text. Duplicates of a segment kept by an earlier call can only be recorded in
+ * {@link #duplicates()}; persist it next to the embedding store if those matter.
+ * The filter remembers every kept segment across calls and documents; create a new one for every ingestion run.
+ */
+public class NearDuplicateSegmentFilter implements TextSegmentTransformer {
+
+    /**
+     * 片段所属近似重复组的元数据键
+     * Metadata key of the near-duplicate group of a kept segment
+     */
+    public static final String GROUP = "near_duplicate_group";
+
+    /**
+     * 被丢弃片段来源（文件名#索引，每行一个）的元数据键
+     * Metadata key of the sources (file name#index, one per line) of the segments dropped for a kept segment
+     */
+    public static final String DUPLICATE_SOURCES = "near_duplicate_sources";
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final double threshold;
+    private final int shingleSize;
+    private final int bands;
+    private final int rows;
+    private final long[] seeds;
+
+    private final List<long[]> signatures = new ArrayList<>();
+    private final List<String> groups = new ArrayList<>();
+    private final List<Map<Long, List<Integer>>> bandIndexes = new ArrayList<>();
+    private final Map<String, List<Duplicate>> duplicates = new LinkedHashMap<>();
+
+    private NearDuplicateSegmentFilter(Builder builder) {
+        this.threshold = ensureBetween(builder.threshold, 0.0, 1.0, "threshold");
+        this.shingleSize = ensureGreaterThanZero(builder.shingleSize, "shingleSize");
+        this.bands = ensureGreaterThanZero(builder.bands, "bands");
+        int hashes = ensureGreaterThanZero(builder.hashes, "hashes");
+        if (hashes % bands != 0) {
+            throw new IllegalArgumentException("hashes (" + hashes + ") must be a multiple of bands (" + bands + ")");
+        }
+        this.rows = hashes / bands;
+        this.seeds = new long[hashes];
+        long seed = builder.seed;
+        for (int i = 0; i < hashes; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            seeds[i] = seed;
+        }
+        for (int band = 0; band < bands; band++) {
+            bandIndexes.add(new HashMap<>());
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 近似重复时返回 null，否则返回带有组元数据的片段
+     * Returns {@code null} for a near-duplicate, otherwise the segment with its {@value #GROUP} metadata
+     */
+    @Override
+    public synchronized TextSegment transform(TextSegment segment) {
+        long[] signature = signature(segment.text());
+        long[] bandHashes = bandHashes(signature);
+
+        // 只比较至少有一个分带相同的片段
+        // Only segments that share at least one band are compared
+        int bestMatch = -1;
+        double bestSimilarity = threshold;
+        for (int band = 0; band < bands; band++) {
+            for (int candidate : bandIndexes.get(band).getOrDefault(bandHashes[band], List.of())) {
+                double similarity = similarity(signature, signatures.get(candidate));
+                if (similarity >= bestSimilarity) {
+                    bestMatch = candidate;
+                    bestSimilarity = similarity;
+                }
+            }
+        }
+
+        if (bestMatch >= 0) {
+            String group = groups.get(bestMatch);
+            duplicates.computeIfAbsent(group, g -> new ArrayList<>()).add(new Duplicate(segment, bestSimilarity));
+            return null;
+        }
+
+        int index = signatures.size();
+        String group = groupOf(segment);
+        signatures.add(signature);
+        groups.add(group);
+        for (int band = 0; band < bands; band++) {
+            bandIndexes.get(band).computeIfAbsent(bandHashes[band], hash -> new ArrayList<>(1)).add(index);
+        }
+        return TextSegment.from(segment.text(), segment.metadata().copy().put(GROUP, group));
+    }
+
+    /**
+     * 过滤整批片段，并在保留的片段中记录同一批中被丢弃片段的来源
+     * Filters all segments, and records in every kept segment the sources of the segments of the same call
+     * that were dropped in its favour
+     */
+    @Override
+    public synchronized List<TextSegment> transformAll(List<TextSegment> segments) {
+        List<TextSegment> kept = new ArrayList<>();
+        for (TextSegment segment : segments) {
+            TextSegment transformed = transform(segment);
+            if (transformed != null) {
+                kept.add(transformed);
+            }
+        }
+
+        // 本次保留的片段的组是新建的，组中的重复片段都来自本次调用；元数据已由 transform 复制
+        // The groups of segments kept by this call are new, so all of their duplicates come from this call.
+        // transform already copied their metadata
+        for (TextSegment segment : kept) {
+            List<Duplicate> members = duplicates.get(segment.metadata().getString(GROUP));
+            if (members != null) {
+                StringJoiner sources = new StringJoiner("\n");
+                for (Duplicate member : members) {
+                    sources.add(sourceOf(member.segment()));
+                }
+                segment.metadata().put(DUPLICATE_SOURCES, sources.toString());
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * 被丢弃的片段，按其所重复的组归类
+     * The dropped segments, by the {@value #GROUP} of the kept segment they duplicate
+     */
+    public synchronized Map<String, List<Duplicate>> duplicates() {
+        Map<String, List<Duplicate>> copy = new LinkedHashMap<>();
+        duplicates.forEach((group, members) -> copy.put(group, List.copyOf(members)));
+        return copy;
+    }
+
+    /**
+     * 已丢弃的片段数
+     * Number of segments dropped so far
+     */
+    public synchronized int droppedCount() {
+        return duplicates.values().stream().mapToInt(List::size).sum();
+    }
+
+    /**
+     * 组 id：保留片段的目录、文件名、索引和文本的基于名称的 UUID
+     * The group: a name-based UUID of the directory, file name, index and text of the kept segment
+     */
+    private static String groupOf(TextSegment segment) {
+        Map<String, Object> metadata = segment.metadata().toMap();
+        String name = String.join("\n",
+                String.valueOf(metadata.get(ABSOLUTE_DIRECTORY_PATH)),
+                String.valueOf(metadata.get(FILE_NAME)),
+                String.valueOf(metadata.get("index")),
+                segment.text());
+        return UUID.nameUUIDFromBytes(name.getBytes(UTF_8)).toString();
+    }
+
+    private static String sourceOf(TextSegment segment) {
+        Map<String, Object> metadata = segment.metadata().toMap();
+        return metadata.get(FILE_NAME) + "#" + metadata.get("index");
+    }
+
+    private long[] signature(String text) {
+        String[] words = NON_WORD.splitAsStream(text.toLowerCase(Locale.ROOT))
+                .filter(word -> !word.isEmpty())
+                .toArray(String[]::new);
+        long[] signature = new long[seeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+
+        // 少于 shingleSize 个词的片段整体作为一个 shingle
+        // A segment with fewer than shingleSize words is a single shingle
+        int shingles = Math.max(1, words.length - shingleSize + 1);
+        for (int start = 0; start < shingles; start++) {
+            long shingle = 0xCBF29CE484222325L;
+            for (int word = start; word < Math.min(start + shingleSize, words.length); word++) {
+                shingle = fnv1a(shingle, words[word]);
+            }
+            for (int i = 0; i < seeds.length; i++) {
+                long hash = mix(shingle ^ seeds[i]);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private long[] bandHashes(long[] signature) {
+        long[] bandHashes = new long[bands];
+        for (int band = 0; band < bands; band++) {
+            long hash = band;
+            for (int row = band * rows; row < (band + 1) * rows; row++) {
+                hash = mix(hash * 31 + signature[row]);
+            }
+            bandHashes[band] = hash;
+        }
+        return bandHashes;
+    }
+
+    private static double similarity(long[] a, long[] b) {
+        int equal = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / a.length;
+    }
+
+    private static long fnv1a(long hash, String word) {
+        for (byte b : word.getBytes(UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        // 词之间的分隔，避免 "ab c" 与 "a bc" 相同
+        // Separates the words, so that "ab c" and "a bc" differ
+        return (hash ^ 0xFF) * 0x100000001B3L;
+    }
+
+    /**
+     * SplitMix64 的混合函数
+     * The finalizer of SplitMix64
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * 被丢弃的近似重复片段
+     * A dropped near-duplicate
+     *
+     * @param segment    the dropped segment, with its original metadata (e.g. file name and index)
+     * @param similarity estimated Jaccard similarity with the kept segment
+     */
+    public record Duplicate(TextSegment segment, double similarity) {
+    }
+
+    public static class Builder {
+
+        private double threshold = 0.8;
+        private int shingleSize = 3;
+        private int hashes = 128;
+        private int bands = 16;
+        private long seed = 42;
+
+        /**
+         * 判定为近似重复的最小 Jaccard 相似度，默认 0.8
+         * Minimum estimated Jaccard similarity of two near-duplicates. Defaults to 0.8.
+         */
+        public Builder threshold(double threshold) {
+            this.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * 每个 shingle 的词数，默认 3
+         * Number of words per shingle. Defaults to 3.
+         */
+        public Builder shingleSize(int shingleSize) {
+            this.shingleSize = shingleSize;
+            return this;
+        }
+
+        /**
+         * MinHash 签名的长度，默认 128
+         * Length of the MinHash signature. Defaults to 128.
+         */
+        public Builder hashes(int hashes) {
+            this.hashes = hashes;
+            return this;
+        }
+
+        /**
+         * LSH 分带数，默认 16。分带越多，找到的候选越多，相似度较低的重复也能找到
+         * Number of LSH bands, a divisor of {@code hashes}. Defaults to 16. More bands find more candidates,
+         * including less similar ones, at the cost of more comparisons.
+         */
+        public Builder bands(int bands) {
+            this.bands = bands;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public NearDuplicateSegmentFilter build() {
+            return new NearDuplicateSegmentFilter(this);
+        }
+    }
+}
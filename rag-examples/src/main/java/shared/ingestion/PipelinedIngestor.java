@@ -0,0 +1,400 @@
+package shared.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.DocumentTransformer;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.data.segment.TextSegmentTransformer;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
+import dev.langchain4j.store.embedding.IngestionResult;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.loadDocument;
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * 流水线式的并行摄取器
+ * A streaming alternative to {@link EmbeddingStoreIngestor} for corpora that do not fit in memory.
+ * <br>
+ * {@link EmbeddingStoreIngestor} loads, splits, embeds and stores all documents one step after the other,
+ * holding every document, segment and embedding in lists. Here each step is a stage with its own executor:
+ * <pre>
+ * load + parse → transform + split → embed in batches → store
+ * </pre>
+ * The stages are connected by bounded queues. When a stage falls behind, the queue in front of it fills up
+ * and the stages before it block, so at most a fixed number of documents, segments and embeddings are
+ * in flight at any time, no matter how large the corpus is. Batches are embedded while earlier batches
+ * are being written to the store.
+ * <br>
+ * Documents are pulled from the given {@link Stream} only as fast as the pipeline consumes them, so a lazy
+ * stream, e.g. from {@link java.nio.file.Files#walk(Path, java.nio.file.FileVisitOption...)}, is never
+ * materialized. If any stage fails, the pipeline stops and the failure is rethrown by {@code ingest}.
+ */
+public class PipelinedIngestor {
+
+    /**
+     * 流结束标记
+     * Marks the end of the items in a queue
+     */
+    private static final Object END = new Object();
+
+    private final DocumentTransformer documentTransformer;
+    private final DocumentSplitter documentSplitter;
+    private final TextSegmentTransformer textSegmentTransformer;
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+
+    private final int loadThreads;
+    private final int splitThreads;
+    private final int embeddingThreads;
+    private final int storeThreads;
+    private final int batchSize;
+    private final int queueCapacity;
+
+    private PipelinedIngestor(Builder builder) {
+        this.documentTransformer = builder.documentTransformer;
+        this.documentSplitter = ensureNotNull(builder.documentSplitter, "documentSplitter");
+        this.textSegmentTransformer = builder.textSegmentTransformer;
+        this.embeddingModel = ensureNotNull(builder.embeddingModel, "embeddingModel");
+        this.embeddingStore = ensureNotNull(builder.embeddingStore, "embeddingStore");
+        this.loadThreads = ensureGreaterThanZero(builder.loadThreads, "loadThreads");
+        this.splitThreads = ensureGreaterThanZero(builder.splitThreads, "splitThreads");
+        this.embeddingThreads = ensureGreaterThanZero(builder.embeddingThreads, "embeddingThreads");
+        this.storeThreads = ensureGreaterThanZero(builder.storeThreads, "storeThreads");
+        this.batchSize = ensureGreaterThanZero(builder.batchSize, "batchSize");
+        this.queueCapacity = ensureGreaterThanZero(builder.queueCapacity, "queueCapacity");
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 加载并摄取文件，加载和解析在加载阶段并行执行
+     * Loads, parses and ingests the files. Loading and parsing run in parallel on the load stage.
+     * The parser supplier is called for every file, so parsers do not need to be thread-safe.
+     */
+    public IngestionResult ingest(Stream<Path> paths, Supplier<DocumentParser> documentParser) {
+        ensureNotNull(documentParser, "documentParser");
+        return run(paths.map(path -> () -> loadDocument(path, documentParser.get())));
+    }
+
+    /**
+     * 摄取文档
+     * Ingests the documents, pulling them from the stream as the pipeline makes room for them
+     */
+    public IngestionResult ingest(Stream<Document> documents) {
+        return run(documents.map(document -> () -> document));
+    }
+
+    private IngestionResult run(Stream<Supplier<Document>> sources) {
+        Run run = new Run();
+        List<ExecutorService> executors = new ArrayList<>();
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+
+        // 每个阶段有自己的线程池，阶段之间是有界队列
+        // Each stage has its own executor, stages are connected by bounded queues
+        BlockingQueue<Object> sourceQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Object> documentQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Object> segmentQueue = new ArrayBlockingQueue<>(batchSize * embeddingThreads * 2);
+        BlockingQueue<Object> batchQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        stage("load", loadThreads, executors, workers, run, sourceQueue, documentQueue,
+                (item, out) -> run.put(out, load(item)));
+        stage("split", splitThreads, executors, workers, run, documentQueue, segmentQueue,
+                (item, out) -> {
+                    for (TextSegment segment : split((Document) item)) {
+                        run.put(out, segment);
+                    }
+                });
+        stage("embed", embeddingThreads, executors, workers, run, segmentQueue, batchQueue,
+                (item, out) -> embed((TextSegment) item, segmentQueue, out, run));
+        stage("store", storeThreads, executors, workers, run, batchQueue, null,
+                (item, out) -> {
+                    EmbeddedBatch batch = (EmbeddedBatch) item;
+                    embeddingStore.addAll(batch.embeddings(), batch.segments());
+                });
+
+        try {
+            Iterator<Supplier<Document>> iterator = sources.iterator();
+            while (iterator.hasNext() && run.failure.get() == null) {
+                run.put(sourceQueue, iterator.next());
+            }
+            run.put(sourceQueue, END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run.fail(e);
+        } catch (Throwable e) {
+            run.fail(e);
+        } finally {
+            sources.close();
+        }
+
+        try {
+            CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            executors.forEach(ExecutorService::shutdown);
+        }
+        Throwable failure = run.failure.get();
+        if (failure instanceof RuntimeException e) {
+            throw e;
+        } else if (failure instanceof Error e) {
+            throw e;
+        } else if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+        return new IngestionResult(run.tokenUsage.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Document load(Object item) {
+        Document document = ((Supplier<Document>) item).get();
+        return documentTransformer == null ? document : documentTransformer.transform(document);
+    }
+
+    private List<TextSegment> split(Document document) {
+        List<TextSegment> segments = documentSplitter.split(document);
+        return textSegmentTransformer == null ? segments : textSegmentTransformer.transformAll(segments);
+    }
+
+    /**
+     * 从队列中凑满一个批次再嵌入
+     * Fills a batch from the queue, then embeds it
+     */
+    private void embed(TextSegment first, BlockingQueue<Object> in, BlockingQueue<Object> out, Run run)
+            throws InterruptedException {
+        List<TextSegment> segments = new ArrayList<>(batchSize);
+        segments.add(first);
+        while (segments.size() < batchSize) {
+            Object next = run.take(in);
+            if (next == END) {
+                // 留给同阶段的其他线程
+                // Leave the marker for the other threads of this stage
+                run.put(in, END);
+                break;
+            }
+            segments.add((TextSegment) next);
+        }
+        Response<List<Embedding>> response = embeddingModel.embedAll(segments);
+        run.tokenUsage.accumulateAndGet(response.tokenUsage(), TokenUsage::sum);
+        run.put(out, new EmbeddedBatch(segments, response.content()));
+    }
+
+    private static void stage(String name,
+                              int threads,
+                              List<ExecutorService> executors,
+                              List<CompletableFuture<Void>> workers,
+                              Run run,
+                              BlockingQueue<Object> in,
+                              BlockingQueue<Object> out,
+                              Handler handler) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ingestion-" + name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executors.add(executor);
+
+        AtomicInteger running = new AtomicInteger(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                try {
+                    while (true) {
+                        Object item = run.take(in);
+                        if (item == END) {
+                            run.put(in, END);
+                            break;
+                        }
+                        handler.handle(item, out);
+                    }
+                    // 最后一个结束的线程通知下一阶段
+                    // The last thread to finish tells the next stage that no more items will come
+                    if (running.decrementAndGet() == 0 && out != null) {
+                        run.put(out, END);
+                    }
+                } catch (CancellationException e) {
+                    // another stage failed
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    run.fail(e);
+                } catch (Throwable e) {
+                    // 包括 Error（例如 OutOfMemoryError），否则其他阶段会一直等待
+                    // Errors too (e.g. OutOfMemoryError), otherwise the other stages would wait forever
+                    run.fail(e);
+                }
+            }, executor));
+        }
+    }
+
+    private interface Handler {
+
+        void handle(Object item, BlockingQueue<Object> out) throws InterruptedException;
+    }
+
+    private record EmbeddedBatch(List<TextSegment> segments, List<Embedding> embeddings) {
+    }
+
+    /**
+     * 一次摄取的状态：第一个失败和累计的令牌用量
+     * The state of one ingestion: the first failure and the token usage so far
+     */
+    private static class Run {
+
+        private static final long POLL_MILLIS = 100;
+
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final AtomicReference<TokenUsage> tokenUsage = new AtomicReference<>();
+
+        void fail(Throwable throwable) {
+            failure.compareAndSet(null, throwable);
+        }
+
+        /**
+         * 队列满时阻塞（背压），但在其他阶段失败时放弃
+         * Blocks while the queue is full (back-pressure), but gives up once another stage has failed
+         */
+        void put(BlockingQueue<Object> queue, Object item) throws InterruptedException {
+            while (!queue.offer(item, POLL_MILLIS, MILLISECONDS)) {
+                checkNotFailed();
+            }
+        }
+
+        Object take(BlockingQueue<Object> queue) throws InterruptedException {
+            Object item;
+            while ((item = queue.poll(POLL_MILLIS, MILLISECONDS)) == null) {
+                checkNotFailed();
+            }
+            return item;
+        }
+
+        private void checkNotFailed() {
+            if (failure.get() != null) {
+                throw new CancellationException("Ingestion failed");
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private DocumentTransformer documentTransformer;
+        private DocumentSplitter documentSplitter;
+        private TextSegmentTransformer textSegmentTransformer;
+        private EmbeddingModel embeddingModel;
+        private EmbeddingStore<TextSegment> embeddingStore;
+        private int loadThreads = 2;
+        private int splitThreads = 1;
+        private int embeddingThreads = 1;
+        private int storeThreads = 1;
+        private int batchSize = 32;
+        private int queueCapacity = 16;
+
+        public Builder documentTransformer(DocumentTransformer documentTransformer) {
+            this.documentTransformer = documentTransformer;
+            return this;
+        }
+
+        public Builder documentSplitter(DocumentSplitter documentSplitter) {
+            this.documentSplitter = documentSplitter;
+            return this;
+        }
+
+        public Builder textSegmentTransformer(TextSegmentTransformer textSegmentTransformer) {
+            this.textSegmentTransformer = textSegmentTransformer;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder embeddingStore(EmbeddingStore<TextSegment> embeddingStore) {
+            this.embeddingStore = embeddingStore;
+            return this;
+        }
+
+        /**
+         * 加载和解析文档的线程数，默认 2
+         * Number of threads loading and parsing documents. Defaults to 2.
+         */
+        public Builder loadThreads(int loadThreads) {
+            this.loadThreads = loadThreads;
+            return this;
+        }
+
+        /**
+         * 转换和切分文档的线程数，默认 1
+         * Number of threads transforming and splitting documents. Defaults to 1.
+         */
+        public Builder splitThreads(int splitThreads) {
+            this.splitThreads = splitThreads;
+            return this;
+        }
+
+        /**
+         * 同时嵌入的批次数，默认 1。进程内模型本身已经多线程，远程模型可以调大
+         * Number of batches embedded concurrently. Defaults to 1: the in-process models already use
+         * all cores for one batch, while remote models benefit from several requests in flight.
+         */
+        public Builder embeddingThreads(int embeddingThreads) {
+            this.embeddingThreads = embeddingThreads;
+            return this;
+        }
+
+        /**
+         * 写入存储的线程数，默认 1。仅当存储支持并发写入时才调大
+         * Number of threads writing to the store. Defaults to 1, increase only for stores that accept
+         * concurrent writes.
+         */
+        public Builder storeThreads(int storeThreads) {
+            this.storeThreads = storeThreads;
+            return this;
+        }
+
+        /**
+         * 每次嵌入的片段数，默认 32
+         * Number of segments per embedding request. Defaults to 32.
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * 等待中的文档数和已嵌入批次数的上限，默认 16。等待中的片段数上限为 2 x batchSize x embeddingThreads
+         * Maximum number of documents, and of embedded batches, waiting between two stages. Defaults to 16.
+         * At most 2 x batchSize x embeddingThreads segments wait to be embedded.
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public PipelinedIngestor build() {
+            return new PipelinedIngestor(this);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package shared.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.loadDocument;
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * 可断点续传的批量摄取任务
+ * A bulk ingestion job that survives being killed: run it again and it continues where it stopped.
+ * <br>
+ * The files are processed in the given order, in batches of whole documents. A checkpoint file records
+ * how many documents are stored. Before a batch is written, the ids of its segments are recorded in the
+ * checkpoint as the pending batch; once the batch is stored, the checkpoint moves past it. Segment ids are
+ * derived from the document id and the position of the segment, so a restart produces the same ids, and the
+ * segments of a pending batch that may have been partially written are removed before the batch is written
+ * again. Nothing is stored twice and nothing is lost, whether the store appends or upserts.
+ * <br>
+ * That holds only if a batch is durable before the checkpoint moves past it. A store that persists on
+ * {@code addAll} (e.g. a database) needs nothing more. An in-process store such as {@code InMemoryEmbeddingStore}
+ * must be saved by the {@code storeCommitter}, which runs after every batch is added and before the checkpoint
+ * moves past it; otherwise a killed run loses the batches it reported as stored.
+ * <br>
+ * Progress, throughput and the estimated time to completion are reported after every batch.
+ * A file that fails to load or embed stops the job; it can be fixed or removed from the list before resuming.
+ */
+public class ResumableIngestionJob {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableIngestionJob.class);
+
+    private static final String POSITION = "position";
+    private static final String LAST_DOCUMENT_ID = "lastDocumentId";
+    private static final String SEGMENTS = "segments";
+    private static final String PENDING_SEGMENT_IDS = "pendingSegmentIds";
+
+    private final DocumentParser documentParser;
+    private final DocumentSplitter documentSplitter;
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final Path checkpointFile;
+    private final int batchSize;
+    private final Consumer<EmbeddingStore<TextSegment>> storeCommitter;
+    private final Consumer<Progress> progressListener;
+
+    private ResumableIngestionJob(Builder builder) {
+        this.documentParser = ensureNotNull(builder.documentParser, "documentParser");
+        this.documentSplitter = ensureNotNull(builder.documentSplitter, "documentSplitter");
+        this.embeddingModel = ensureNotNull(builder.embeddingModel, "embeddingModel");
+        this.embeddingStore = ensureNotNull(builder.embeddingStore, "embeddingStore");
+        this.checkpointFile = ensureNotNull(builder.checkpointFile, "checkpointFile");
+        this.batchSize = ensureGreaterThanZero(builder.batchSize, "batchSize");
+        this.storeCommitter = ensureNotNull(builder.storeCommitter, "storeCommitter");
+        this.progressListener = ensureNotNull(builder.progressListener, "progressListener");
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 摄取文件，从检查点（如果存在）继续
+     * Ingests the files, continuing from the checkpoint if there is one.
+     * The list must be the same, in the same order, on every run, e.g. a sorted directory listing.
+     */
+    public Progress run(List<Path> files) {
+        Checkpoint checkpoint = readCheckpoint();
+        if (checkpoint.position() > files.size()
+                || (checkpoint.position() > 0
+                && !documentId(files.get(checkpoint.position() - 1)).equals(checkpoint.lastDocumentId()))) {
+            throw new IllegalStateException("The files do not match the checkpoint " + checkpointFile
+                    + ", last stored document was " + checkpoint.lastDocumentId());
+        }
+        if (!checkpoint.pendingSegmentIds().isEmpty()) {
+            // 上次中断时正在写入的批次可能已部分写入
+            // The batch being written when the previous run stopped may be partially stored
+            embeddingStore.removeAll(checkpoint.pendingSegmentIds());
+            log.info("Removed {} segments of the interrupted batch", checkpoint.pendingSegmentIds().size());
+        }
+        if (checkpoint.position() > 0) {
+            log.info("Resuming after {} of {} documents", checkpoint.position(), files.size());
+        }
+
+        long start = System.nanoTime();
+        int startPosition = checkpoint.position();
+        int position = startPosition;
+        long segmentCount = checkpoint.segments();
+        Progress progress = progress(position, files.size(), segmentCount, startPosition, start);
+
+        List<String> ids = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        while (position < files.size()) {
+            // 批次只包含完整的文档，检查点总在文档边界上
+            // A batch holds whole documents only, so that the checkpoint is always at a document boundary
+            int batchEnd = position;
+            while (batchEnd < files.size() && segments.size() < batchSize) {
+                String documentId = documentId(files.get(batchEnd));
+                Document document = loadDocument(files.get(batchEnd), documentParser);
+                List<TextSegment> documentSegments = documentSplitter.split(document);
+                for (int i = 0; i < documentSegments.size(); i++) {
+                    ids.add(segmentId(documentId, i));
+                }
+                segments.addAll(documentSegments);
+                batchEnd++;
+            }
+
+            List<Embedding> embeddings = segments.isEmpty() ? List.of() : embeddingModel.embedAll(segments).content();
+
+            String lastDocumentId = documentId(files.get(batchEnd - 1));
+            writeCheckpoint(new Checkpoint(position, checkpoint.lastDocumentId(), segmentCount, ids));
+            if (!segments.isEmpty()) {
+                embeddingStore.addAll(ids, embeddings, segments);
+            }
+            // 检查点越过该批次之前，该批次必须已持久化
+            // The batch must be durable before the checkpoint moves past it
+            storeCommitter.accept(embeddingStore);
+            segmentCount += segments.size();
+            position = batchEnd;
+            checkpoint = new Checkpoint(position, lastDocumentId, segmentCount, List.of());
+            writeCheckpoint(checkpoint);
+
+            progress = progress(position, files.size(), segmentCount, startPosition, start);
+            progressListener.accept(progress);
+            ids.clear();
+            segments.clear();
+        }
+        return progress;
+    }
+
+    /**
+     * 文档 id，与 IncrementalIngestor 的默认 id 相同
+     * The document id: the absolute path of the file, like the default of {@link IncrementalIngestor}
+     */
+    private static String documentId(Path file) {
+        return file.toAbsolutePath().toString();
+    }
+
+    /**
+     * 由文档 id 和片段序号确定的片段 id，重跑时保持不变
+     * A segment id derived from the document id and the position of the segment, the same on every run
+     */
+    private static String segmentId(String documentId, int index) {
+        return UUID.nameUUIDFromBytes((documentId + "#" + index).getBytes(UTF_8)).toString();
+    }
+
+    private static Progress progress(int position, int total, long segments, int startPosition, long startNanos) {
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+        double seconds = Math.max(elapsed.toNanos(), 1) / 1e9;
+        double documentsPerSecond = (position - startPosition) / seconds;
+        Duration eta = documentsPerSecond > 0
+                ? Duration.ofSeconds((long) Math.ceil((total - position) / documentsPerSecond))
+                : null;
+        return new Progress(position, total, segments, documentsPerSecond, elapsed, eta);
+    }
+
+    private Checkpoint readCheckpoint() {
+        if (!Files.exists(checkpointFile)) {
+            return new Checkpoint(0, null, 0, List.of());
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(checkpointFile, UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String pendingSegmentIds = properties.getProperty(PENDING_SEGMENT_IDS, "");
+        return new Checkpoint(
+                Integer.parseInt(properties.getProperty(POSITION, "0")),
+                properties.getProperty(LAST_DOCUMENT_ID),
+                Long.parseLong(properties.getProperty(SEGMENTS, "0")),
+                pendingSegmentIds.isEmpty() ? List.of() : Arrays.asList(pendingSegmentIds.split(",")));
+    }
+
+    /**
+     * 先写临时文件再原子替换，避免崩溃时留下损坏的检查点
+     * Writes a temporary file and atomically replaces the checkpoint, so that a crash never corrupts it
+     */
+    private void writeCheckpoint(Checkpoint checkpoint) {
+        Properties properties = new Properties();
+        properties.setProperty(POSITION, String.valueOf(checkpoint.position()));
+        if (checkpoint.lastDocumentId() != null) {
+            properties.setProperty(LAST_DOCUMENT_ID, checkpoint.lastDocumentId());
+        }
+        properties.setProperty(SEGMENTS, String.valueOf(checkpoint.segments()));
+        properties.setProperty(PENDING_SEGMENT_IDS, String.join(",", checkpoint.pendingSegmentIds()));
+        try {
+            Path directory = checkpointFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporaryFile = Files.createTempFile(directory, checkpointFile.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporaryFile, UTF_8)) {
+                properties.store(writer, "ResumableIngestionJob checkpoint");
+            }
+            Files.move(temporaryFile, checkpointFile, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void logProgress(Progress progress) {
+        log.info("Ingested {}/{} documents ({} segments), {} documents/s, ETA {}",
+                progress.documents(), progress.totalDocuments(), progress.segments(),
+                String.format("%.1f", progress.documentsPerSecond()),
+                progress.eta() == null ? "unknown" : progress.eta());
+    }
+
+    /**
+     * @param position          number of documents stored
+     * @param lastDocumentId    id of the last stored document
+     * @param segments          number of segments stored
+     * @param pendingSegmentIds ids of the batch being written, empty between batches
+     */
+    private record Checkpoint(int position, String lastDocumentId, long segments, List<String> pendingSegmentIds) {
+    }
+
+    /**
+     * 任务进度
+     * Progress of the job
+     *
+     * @param documents          number of documents stored, including those of previous runs
+     * @param totalDocuments     number of documents to ingest
+     * @param segments           number of segments stored, including those of previous runs
+     * @param documentsPerSecond throughput of the current run
+     * @param elapsed            duration of the current run
+     * @param eta                estimated time until all documents are stored, {@code null} until known
+     */
+    public record Progress(int documents, int totalDocuments, long segments, double documentsPerSecond,
+                           Duration elapsed, Duration eta) {
+    }
+
+    public static class Builder {
+
+        private DocumentParser documentParser;
+        private DocumentSplitter documentSplitter;
+        private EmbeddingModel embeddingModel;
+        private EmbeddingStore<TextSegment> embeddingStore;
+        private Path checkpointFile;
+        private int batchSize = 64;
+        private Consumer<EmbeddingStore<TextSegment>> storeCommitter = embeddingStore -> {
+        };
+        private Consumer<Progress> progressListener = ResumableIngestionJob::logProgress;
+
+        public Builder documentParser(DocumentParser documentParser) {
+            this.documentParser = documentParser;
+            return this;
+        }
+
+        public Builder documentSplitter(DocumentSplitter documentSplitter) {
+            this.documentSplitter = documentSplitter;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder embeddingStore(EmbeddingStore<TextSegment> embeddingStore) {
+            this.embeddingStore = embeddingStore;
+            return this;
+        }
+
+        /**
+         * 检查点文件，不存在时从头开始
+         * The checkpoint file. Without one, the job starts from the first document.
+         */
+        public Builder checkpointFile(Path checkpointFile) {
+            this.checkpointFile = checkpointFile;
+            return this;
+        }
+
+        /**
+         * 每批至少的片段数，每批之后写一次检查点，默认 64
+         * Minimum number of segments per batch; a checkpoint is written after every batch. Defaults to 64.
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * 每批写入之后、检查点前进之前调用，用于持久化存储。默认不做任何事，即假定存储在 addAll 时已持久化
+         * Makes the store durable, called after every batch is added and before the checkpoint moves past it,
+         * e.g. {@code store -> ((InMemoryEmbeddingStore<TextSegment>) store).serializeToFile(file)}.
+         * Defaults to doing nothing, for stores that are durable when {@code addAll} returns.
+         */
+        public Builder storeCommitter(Consumer<EmbeddingStore<TextSegment>> storeCommitter) {
+            this.storeCommitter = storeCommitter;
+            return this;
+        }
+
+        /**
+         * 每批之后收到进度，默认写日志
+         * Receives the progress after every batch. Defaults to logging it.
+         */
+        public Builder progressListener(Consumer<Progress> progressListener) {
+            this.progressListener = progressListener;
+            return this;
+        }
+
+        public ResumableIngestionJob build() {
+            return new ResumableIngestionJob(this);
+        }
+    }
+}
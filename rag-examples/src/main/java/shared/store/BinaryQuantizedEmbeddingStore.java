@@ -0,0 +1,416 @@
+package shared.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static dev.langchain4j.internal.Utils.randomUUID;
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+
+/**
+ * 二值量化粗排 + float 精排的两阶段嵌入存储
+ * A two-stage {@link EmbeddingStore}: every vector is also kept as a binary code with one bit per dimension,
+ * candidates are shortlisted by Hamming distance ({@link Long#bitCount(long)} over 64 dimensions at a time),
+ * and only the shortlist is rescored with the exact cosine similarity of the full vectors.
+ * <br>
+ * A bit is set when the value is above the mean of its dimension; centering matters because embedding dimensions
+ * are rarely distributed around zero. The means are taken from the first {@code calibrationSize} stored embeddings.
+ * Until that many are stored, every search rescores all of them; then all of them are encoded at once.
+ * The means are not updated afterwards, and {@link #removeAll()} starts a new calibration.
+ * The shortlist holds {@code maxResults * oversampling} candidates, so a larger {@code oversampling}
+ * trades latency for recall. Returned scores are exact.
+ * <pre>{@code
+ * EmbeddingStore<TextSegment> embeddingStore = BinaryQuantizedEmbeddingStore.builder()
+ *         .oversampling(8)
+ *         .calibrationSize(1000)
+ *         .build();
+ * }</pre>
+ */
+public class BinaryQuantizedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private final int oversampling;
+    private final SimilarityKernel kernel;
+    private final int calibrationSize;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> positionsById = new HashMap<>();
+    private final BitSet removed = new BitSet();
+
+    private int dimension = -1;
+    private int words;
+    private float[] thresholds;
+
+    private int size;
+    private long[] codes = new long[0];
+    private float[] vectors = new float[0];
+    private float[] inverseNorms = new float[0];
+    private String[] ids = new String[0];
+    private TextSegment[] textSegments = new TextSegment[0];
+
+    public BinaryQuantizedEmbeddingStore() {
+        this(builder());
+    }
+
+    private BinaryQuantizedEmbeddingStore(Builder builder) {
+        this.oversampling = ensureGreaterThanZero(builder.oversampling, "oversampling");
+        this.kernel = builder.kernel == null ? SimilarityKernel.create() : builder.kernel;
+        this.calibrationSize = ensureGreaterThanZero(builder.calibrationSize, "calibrationSize");
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = randomUUID();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = randomUUID();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        ensureTrue(ids.size() == embeddings.size(), "ids and embeddings must have the same size");
+        ensureTrue(textSegments == null || textSegments.size() == embeddings.size(),
+                "textSegments and embeddings must have the same size");
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (dimension == -1) {
+                dimension = ensureNotNull(embeddings.get(0), "embedding").dimension();
+                words = (dimension + Long.SIZE - 1) / Long.SIZE;
+            }
+            ensureCapacity(size + ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                float[] vector = ensureNotNull(embeddings.get(i), "embedding").vector();
+                ensureTrue(vector.length == dimension,
+                        "embedding dimension " + vector.length + " does not match the store dimension " + dimension);
+
+                int position = size++;
+                System.arraycopy(vector, 0, vectors, position * dimension, dimension);
+                inverseNorms[position] = inverseNorm(vector);
+                if (isCalibrated()) {
+                    encode(vector, codes, position * words);
+                }
+                this.ids[position] = ensureNotNull(ids.get(i), "id");
+                this.textSegments[position] = textSegments == null ? null : textSegments.get(i);
+
+                Integer previous = positionsById.put(ids.get(i), position);
+                if (previous != null) {
+                    removed.set(previous);
+                }
+            }
+            if (!isCalibrated() && positionsById.size() >= calibrationSize) {
+                calibrate();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer position = positionsById.remove(id);
+                if (position != null) {
+                    removed.set(position);
+                    textSegments[position] = null;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        ensureNotNull(filter, "filter");
+        lock.writeLock().lock();
+        try {
+            for (int position = 0; position < size; position++) {
+                if (!removed.get(position) && matches(position, filter)) {
+                    removed.set(position);
+                    positionsById.remove(ids[position]);
+                    textSegments[position] = null;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            positionsById.clear();
+            removed.clear();
+            dimension = -1;
+            words = 0;
+            thresholds = null;
+            size = 0;
+            codes = new long[0];
+            vectors = new float[0];
+            inverseNorms = new float[0];
+            ids = new String[0];
+            textSegments = new TextSegment[0];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            float[] query = request.queryEmbedding().vector();
+            ensureTrue(query.length == dimension, "query embedding dimension does not match the store dimension");
+
+            // 校准之前，所有向量都参与精排
+            // Before the calibration, every vector is rescored
+            int[] shortlist = isCalibrated()
+                    ? shortlist(query, request.filter(), (long) request.maxResults() * oversampling)
+                    : candidates(request.filter());
+            return rescore(query, shortlist, request);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 二值码（以及校准阈值）占用的字节数，不包括用于精排的原始向量。
+     * Bytes used by the binary codes and the calibration thresholds, excluding the full vectors used for rescoring.
+     */
+    public long codeMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            return !isCalibrated() ? 0 : (long) size * words * Long.BYTES + (long) dimension * Float.BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 第一阶段：按汉明距离对所有向量做计数排序，按距离从小到大取出满足过滤条件的候选。
+     * First stage: counting-sorts every vector by Hamming distance and takes the closest ones that pass the filter.
+     * The filter is only evaluated for candidates that are close enough to make it into the shortlist.
+     */
+    private int[] shortlist(float[] query, Filter filter, long limit) {
+        long[] queryCode = new long[words];
+        encode(query, queryCode, 0);
+
+        int[] distances = new int[size];
+        int[] counts = new int[dimension + 2];
+        for (int position = 0; position < size; position++) {
+            int distance = 0;
+            int offset = position * words;
+            for (int w = 0; w < words; w++) {
+                distance += Long.bitCount(codes[offset + w] ^ queryCode[w]);
+            }
+            distances[position] = distance;
+            counts[distance + 1]++;
+        }
+        for (int distance = 1; distance < counts.length; distance++) {
+            counts[distance] += counts[distance - 1];
+        }
+        int[] byDistance = new int[size];
+        for (int position = 0; position < size; position++) {
+            byDistance[counts[distances[position]]++] = position;
+        }
+
+        int[] shortlist = new int[(int) Math.min(limit, size)];
+        int taken = 0;
+        for (int i = 0; i < size && taken < shortlist.length; i++) {
+            int position = byDistance[i];
+            if (!removed.get(position) && (filter == null || matches(position, filter))) {
+                shortlist[taken++] = position;
+            }
+        }
+        return Arrays.copyOf(shortlist, taken);
+    }
+
+    private int[] candidates(Filter filter) {
+        int[] candidates = new int[size];
+        int taken = 0;
+        for (int position = 0; position < size; position++) {
+            if (!removed.get(position) && (filter == null || matches(position, filter))) {
+                candidates[taken++] = position;
+            }
+        }
+        return Arrays.copyOf(candidates, taken);
+    }
+
+    /**
+     * 第二阶段：用原始向量计算精确的余弦相似度。
+     * Second stage: exact cosine similarity on the full vectors of the shortlist.
+     */
+    private EmbeddingSearchResult<TextSegment> rescore(float[] query, int[] shortlist, EmbeddingSearchRequest request) {
+        float inverseQueryNorm = inverseNorm(query);
+        float[] dotProduct = new float[1];
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(shortlist.length);
+        for (int position : shortlist) {
+            kernel.dotProducts(query, vectors, position, 1, dotProduct);
+            double cosine = (double) dotProduct[0] * inverseNorms[position] * inverseQueryNorm;
+            double score = RelevanceScore.fromCosineSimilarity(cosine);
+            if (score >= request.minScore()) {
+                float[] vector = Arrays.copyOfRange(vectors, position * dimension, (position + 1) * dimension);
+                matches.add(new EmbeddingMatch<>(score, ids[position], Embedding.from(vector), textSegments[position]));
+            }
+        }
+        matches.sort(Comparator.comparingDouble(EmbeddingMatch<TextSegment>::score).reversed());
+        return new EmbeddingSearchResult<>(matches.subList(0, Math.min(request.maxResults(), matches.size())));
+    }
+
+    private boolean isCalibrated() {
+        return thresholds != null;
+    }
+
+    /**
+     * 以所有已存储向量的归一化均值作为阈值，然后编码它们。
+     * Takes the normalized mean of all stored vectors as the thresholds and encodes them.
+     */
+    private void calibrate() {
+        float[] means = new float[dimension];
+        for (int position : positionsById.values()) {
+            int offset = position * dimension;
+            for (int i = 0; i < dimension; i++) {
+                means[i] += vectors[offset + i] * inverseNorms[position];
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            means[i] /= positionsById.size();
+        }
+        thresholds = means;
+
+        codes = new long[ids.length * words];
+        for (int position = 0; position < size; position++) {
+            float[] vector = Arrays.copyOfRange(vectors, position * dimension, (position + 1) * dimension);
+            encode(vector, codes, position * words);
+        }
+    }
+
+    /**
+     * 将向量编码为二值码：归一化后的值大于该维度阈值时置 1。
+     * Encodes the vector into {@code words} longs: a bit is set when the normalized value is above the threshold.
+     */
+    private void encode(float[] vector, long[] destination, int offset) {
+        float inverseNorm = inverseNorm(vector);
+        Arrays.fill(destination, offset, offset + words, 0L);
+        for (int i = 0; i < dimension; i++) {
+            if (vector[i] * inverseNorm > thresholds[i]) {
+                destination[offset + i / Long.SIZE] |= 1L << (i % Long.SIZE);
+            }
+        }
+    }
+
+    private boolean matches(int position, Filter filter) {
+        TextSegment textSegment = textSegments[position];
+        return textSegment != null && filter.test(textSegment.metadata());
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, Math.max(16, ids.length * 2));
+        if (isCalibrated()) {
+            codes = Arrays.copyOf(codes, newCapacity * words);
+        }
+        vectors = Arrays.copyOf(vectors, newCapacity * dimension);
+        inverseNorms = Arrays.copyOf(inverseNorms, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        textSegments = Arrays.copyOf(textSegments, newCapacity);
+    }
+
+    private static float inverseNorm(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        return norm == 0 ? 0 : (float) (1 / Math.sqrt(norm));
+    }
+
+    public static class Builder {
+
+        private int oversampling = 4;
+        private SimilarityKernel kernel;
+        private int calibrationSize = 256;
+
+        /**
+         * 粗排候选数与 maxResults 的倍数，默认 4
+         * How many times {@code maxResults} candidates are shortlisted by Hamming distance, 4 by default
+         */
+        public Builder oversampling(int oversampling) {
+            this.oversampling = oversampling;
+            return this;
+        }
+
+        /**
+         * 精排使用的相似度内核，默认 {@link SimilarityKernel#create()}
+         * The kernel used for rescoring, {@link SimilarityKernel#create()} by default
+         */
+        public Builder kernel(SimilarityKernel kernel) {
+            this.kernel = kernel;
+            return this;
+        }
+
+        /**
+         * 用于计算阈值的向量数，默认 256。在此之前，搜索对所有向量精排。
+         * How many vectors the thresholds are taken from, 256 by default.
+         * Until that many are stored, every search rescores all of them.
+         */
+        public Builder calibrationSize(int calibrationSize) {
+            this.calibrationSize = calibrationSize;
+            return this;
+        }
+
+        public BinaryQuantizedEmbeddingStore build() {
+            return new BinaryQuantizedEmbeddingStore(this);
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package shared.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsGreaterThan;
+import dev.langchain4j.store.embedding.filter.comparison.IsGreaterThanOrEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.comparison.IsLessThan;
+import dev.langchain4j.store.embedding.filter.comparison.IsLessThanOrEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import dev.langchain4j.store.embedding.filter.logical.Not;
+import dev.langchain4j.store.embedding.filter.logical.Or;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static dev.langchain4j.internal.Utils.randomUUID;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+
+/**
+ * 使用位图倒排索引进行元数据预过滤的嵌入存储
+ * An exact {@link EmbeddingStore} that keeps a roaring-bitmap inverted index for every metadata key
+ * and uses it to evaluate the search {@link Filter} before any vector is scored.
+ * <br>
+ * {@link IsEqualTo}, {@link IsNotEqualTo}, {@link IsIn}, {@link IsNotIn}, range comparisons, {@link And},
+ * {@link Or} and {@link Not} are compiled into bitmap operations; any other filter is evaluated once per
+ * stored segment. Only the positions that survive the filter are scored, so a search restricted to one
+ * user out of many thousands touches that user's vectors only, instead of scanning the whole store.
+ * <br>
+ * Numbers are indexed by their numeric value (so {@code 1}, {@code 1L} and {@code 1.0} are equal), everything
+ * else by its string form. A comparison between a number and a string matches nothing. NaN and infinite
+ * values are rejected with an {@link IllegalArgumentException}, in metadata as well as in filters.
+ */
+public class BitmapIndexedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    /**
+     * 每次交给内核计算的向量块大小（字节）
+     * Size in bytes of the largest run of consecutive vectors handed to the kernel at once
+     */
+    private static final int BLOCK_BYTES = 256 * 1024;
+
+    private final SimilarityKernel kernel;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> positionsById = new HashMap<>();
+    private final Map<String, KeyIndex> indexes = new HashMap<>();
+    private final RoaringBitmap live = new RoaringBitmap();
+
+    private int dimension = -1;
+    private int size;
+    private float[] vectors = new float[0];
+    private float[] inverseNorms = new float[0];
+    private String[] ids = new String[0];
+    private TextSegment[] textSegments = new TextSegment[0];
+
+    public BitmapIndexedEmbeddingStore() {
+        this(SimilarityKernel.create());
+    }
+
+    public BitmapIndexedEmbeddingStore(SimilarityKernel kernel) {
+        this.kernel = ensureNotNull(kernel, "kernel");
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = randomUUID();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = randomUUID();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        ensureTrue(ids.size() == embeddings.size(), "ids and embeddings must have the same size");
+        ensureTrue(textSegments == null || textSegments.size() == embeddings.size(),
+                "textSegments and embeddings must have the same size");
+        if (ids.isEmpty()) {
+            return;
+        }
+        // 先检查元数据，不可索引的值不会留下添加了一半的批次
+        // Check the metadata first, so that a value that cannot be indexed does not leave a half-added batch
+        if (textSegments != null) {
+            for (TextSegment textSegment : textSegments) {
+                if (textSegment != null) {
+                    textSegment.metadata().toMap().forEach(KeyIndex::ensureIndexable);
+                }
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (dimension == -1) {
+                dimension = embeddings.get(0).dimension();
+            }
+            ensureCapacity(size + ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                float[] vector = ensureNotNull(embeddings.get(i), "embedding").vector();
+                ensureTrue(vector.length == dimension,
+                        "embedding dimension " + vector.length + " does not match the store dimension " + dimension);
+
+                int position = size++;
+                System.arraycopy(vector, 0, vectors, position * dimension, dimension);
+                inverseNorms[position] = inverseNorm(vector);
+                this.ids[position] = ensureNotNull(ids.get(i), "id");
+                this.textSegments[position] = textSegments == null ? null : textSegments.get(i);
+                live.add(position);
+                if (this.textSegments[position] != null) {
+                    index(position, this.textSegments[position].metadata());
+                }
+
+                Integer previous = positionsById.put(ids.get(i), position);
+                if (previous != null) {
+                    remove(previous);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer position = positionsById.remove(id);
+                if (position != null) {
+                    remove(position);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        ensureNotNull(filter, "filter");
+        lock.writeLock().lock();
+        try {
+            RoaringBitmap matching = RoaringBitmap.and(compile(filter), live);
+            matching.forEach((int position) -> {
+                positionsById.remove(ids[position]);
+                remove(position);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            positionsById.clear();
+            indexes.clear();
+            live.clear();
+            dimension = -1;
+            size = 0;
+            vectors = new float[0];
+            inverseNorms = new float[0];
+            ids = new String[0];
+            textSegments = new TextSegment[0];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            float[] query = request.queryEmbedding().vector();
+            ensureTrue(query.length == dimension, "query embedding dimension does not match the store dimension");
+            float inverseQueryNorm = inverseNorm(query);
+
+            RoaringBitmap candidates = request.filter() == null
+                    ? live
+                    : RoaringBitmap.and(compile(request.filter()), live);
+
+            // 将连续的候选位置合并为一段，交给内核一次计算
+            // Consecutive candidate positions are merged into runs so that the kernel scores them in one call
+            PriorityQueue<Scored> topK = new PriorityQueue<>(Scored.LEAST_SIMILAR_FIRST);
+            float[] scores = new float[Math.max(1, BLOCK_BYTES / (dimension * Float.BYTES))];
+            PeekableIntIterator iterator = candidates.getIntIterator();
+            int runStart = 0;
+            int runLength = 0;
+            while (iterator.hasNext()) {
+                int position = iterator.next();
+                if (runLength > 0 && position == runStart + runLength && runLength < scores.length) {
+                    runLength++;
+                    continue;
+                }
+                score(query, inverseQueryNorm, runStart, runLength, scores, topK, request);
+                runStart = position;
+                runLength = 1;
+            }
+            score(query, inverseQueryNorm, runStart, runLength, scores, topK, request);
+
+            return toResult(topK);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void score(float[] query, float inverseQueryNorm, int from, int count, float[] scores,
+                       PriorityQueue<Scored> topK, EmbeddingSearchRequest request) {
+        if (count == 0) {
+            return;
+        }
+        kernel.dotProducts(query, vectors, from, count, scores);
+        for (int i = 0; i < count; i++) {
+            int position = from + i;
+            double cosine = (double) scores[i] * inverseNorms[position] * inverseQueryNorm;
+            double score = RelevanceScore.fromCosineSimilarity(cosine);
+            if (score < request.minScore()) {
+                continue;
+            }
+            if (topK.size() == request.maxResults() && score <= topK.peek().score()) {
+                continue;
+            }
+            topK.add(new Scored(position, score));
+            if (topK.size() > request.maxResults()) {
+                topK.poll();
+            }
+        }
+    }
+
+    private EmbeddingSearchResult<TextSegment> toResult(PriorityQueue<Scored> topK) {
+        List<Scored> sorted = new ArrayList<>(topK);
+        sorted.sort(Scored.LEAST_SIMILAR_FIRST.reversed());
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(sorted.size());
+        for (Scored scored : sorted) {
+            int position = scored.position();
+            float[] vector = Arrays.copyOfRange(vectors, position * dimension, (position + 1) * dimension);
+            matches.add(new EmbeddingMatch<>(scored.score(), ids[position], Embedding.from(vector), textSegments[position]));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    /**
+     * 将过滤条件编译为位图运算。返回的位图可能是索引本身，调用方不得修改。
+     * Compiles the filter into bitmap operations. The returned bitmap may be owned by the index
+     * and must not be modified by the caller.
+     */
+    private RoaringBitmap compile(Filter filter) {
+        if (filter instanceof And and) {
+            return RoaringBitmap.and(compile(and.left()), compile(and.right()));
+        } else if (filter instanceof Or or) {
+            return RoaringBitmap.or(compile(or.left()), compile(or.right()));
+        } else if (filter instanceof Not not) {
+            return RoaringBitmap.andNot(live, compile(not.expression()));
+        } else if (filter instanceof IsEqualTo isEqualTo) {
+            return equalTo(isEqualTo.key(), isEqualTo.comparisonValue());
+        } else if (filter instanceof IsNotEqualTo isNotEqualTo) {
+            return RoaringBitmap.andNot(live, equalTo(isNotEqualTo.key(), isNotEqualTo.comparisonValue()));
+        } else if (filter instanceof IsIn isIn) {
+            return in(isIn.key(), isIn.comparisonValues());
+        } else if (filter instanceof IsNotIn isNotIn) {
+            return RoaringBitmap.andNot(live, in(isNotIn.key(), isNotIn.comparisonValues()));
+        } else if (filter instanceof IsGreaterThan isGreaterThan) {
+            return range(isGreaterThan.key(), isGreaterThan.comparisonValue(), true, false);
+        } else if (filter instanceof IsGreaterThanOrEqualTo isGreaterThanOrEqualTo) {
+            return range(isGreaterThanOrEqualTo.key(), isGreaterThanOrEqualTo.comparisonValue(), true, true);
+        } else if (filter instanceof IsLessThan isLessThan) {
+            return range(isLessThan.key(), isLessThan.comparisonValue(), false, false);
+        } else if (filter instanceof IsLessThanOrEqualTo isLessThanOrEqualTo) {
+            return range(isLessThanOrEqualTo.key(), isLessThanOrEqualTo.comparisonValue(), false, true);
+        }
+
+        // 无法编译的过滤条件（例如 ContainsString）逐个计算
+        // Filters that cannot be compiled (e.g. ContainsString) are evaluated segment by segment
+        RoaringBitmap matching = new RoaringBitmap();
+        live.forEach((int position) -> {
+            TextSegment textSegment = textSegments[position];
+            if (textSegment != null && filter.test(textSegment.metadata())) {
+                matching.add(position);
+            }
+        });
+        return matching;
+    }
+
+    private RoaringBitmap equalTo(String key, Object value) {
+        KeyIndex index = indexes.get(key);
+        RoaringBitmap bitmap = index == null ? null : index.bitmaps(value).get(KeyIndex.normalize(value));
+        return bitmap == null ? new RoaringBitmap() : bitmap;
+    }
+
+    private RoaringBitmap in(String key, Collection<?> values) {
+        List<RoaringBitmap> bitmaps = new ArrayList<>(values.size());
+        for (Object value : values) {
+            bitmaps.add(equalTo(key, value));
+        }
+        return RoaringBitmap.or(bitmaps.iterator());
+    }
+
+    private RoaringBitmap range(String key, Comparable<?> value, boolean greater, boolean inclusive) {
+        KeyIndex index = indexes.get(key);
+        if (index == null) {
+            return new RoaringBitmap();
+        }
+        NavigableMap<Comparable<?>, RoaringBitmap> bitmaps = index.bitmaps(value);
+        Comparable<?> bound = KeyIndex.normalize(value);
+        NavigableMap<Comparable<?>, RoaringBitmap> inRange = greater
+                ? bitmaps.tailMap(bound, inclusive)
+                : bitmaps.headMap(bound, inclusive);
+        return RoaringBitmap.or(inRange.values().iterator());
+    }
+
+    private void index(int position, Metadata metadata) {
+        metadata.toMap().forEach((key, value) -> indexes.computeIfAbsent(key, k -> new KeyIndex())
+                .bitmaps(value)
+                .computeIfAbsent(KeyIndex.normalize(value), v -> new RoaringBitmap())
+                .add(position));
+    }
+
+    private void remove(int position) {
+        live.remove(position);
+        TextSegment textSegment = textSegments[position];
+        if (textSegment != null) {
+            textSegment.metadata().toMap().forEach((key, value) -> {
+                KeyIndex index = indexes.get(key);
+                NavigableMap<Comparable<?>, RoaringBitmap> bitmaps = index.bitmaps(value);
+                Comparable<?> normalized = KeyIndex.normalize(value);
+                RoaringBitmap bitmap = bitmaps.get(normalized);
+                bitmap.remove(position);
+                if (bitmap.isEmpty()) {
+                    bitmaps.remove(normalized);
+                }
+            });
+            textSegments[position] = null;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, Math.max(16, ids.length * 2));
+        vectors = Arrays.copyOf(vectors, newCapacity * dimension);
+        inverseNorms = Arrays.copyOf(inverseNorms, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        textSegments = Arrays.copyOf(textSegments, newCapacity);
+    }
+
+    private static float inverseNorm(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        return norm == 0 ? 0 : (float) (1 / Math.sqrt(norm));
+    }
+
+    /**
+     * 单个元数据键的倒排索引：数值按大小排序，其余按字符串排序
+     * Inverted index of a single metadata key: numbers ordered by value, everything else by string form
+     */
+    private static final class KeyIndex {
+
+        final NavigableMap<Comparable<?>, RoaringBitmap> numbers = new TreeMap<>();
+        final NavigableMap<Comparable<?>, RoaringBitmap> strings = new TreeMap<>();
+
+        NavigableMap<Comparable<?>, RoaringBitmap> bitmaps(Object value) {
+            return value instanceof Number ? numbers : strings;
+        }
+
+        static Comparable<?> normalize(Object value) {
+            ensureIndexable(null, value);
+            return value instanceof Number ? new BigDecimal(value.toString()) : value.toString();
+        }
+
+        /**
+         * NaN 和无穷大没有 BigDecimal 形式，过滤条件也无法比较它们
+         * NaN and infinities have no BigDecimal form, and filters cannot compare them either
+         */
+        static void ensureIndexable(String key, Object value) {
+            if ((value instanceof Double || value instanceof Float) && !Double.isFinite(((Number) value).doubleValue())) {
+                throw new IllegalArgumentException((key == null ? "" : "Metadata key '" + key + "': ")
+                        + "non-finite number " + value + " cannot be indexed or compared");
+            }
+        }
+    }
+
+    private record Scored(int position, double score) {
+
+        static final Comparator<Scored> LEAST_SIMILAR_FIRST = Comparator.comparingDouble(Scored::score);
+    }
+}
@@ -0,0 +1,292 @@
+package shared.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static dev.langchain4j.internal.Utils.randomUUID;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+
+/**
+ * 向量连续存储、使用 SIMD 内核进行精确搜索的嵌入存储
+ * An exact (brute-force) {@link EmbeddingStore} that keeps all vectors in one contiguous {@code float[]}
+ * and scores them block by block with a {@link SimilarityKernel}.
+ * <br>
+ * Results are the same as with {@code InMemoryEmbeddingStore} (cosine similarity converted with
+ * {@link RelevanceScore#fromCosineSimilarity(double)}), but the scan runs over a flat array instead of
+ * boxed {@link Embedding} objects and uses SIMD instructions when {@code jdk.incubator.vector} is available.
+ */
+public class FlatEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    /**
+     * 每次交给内核计算的向量块大小（字节），使其能够留在 CPU 缓存中
+     * Size in bytes of the vector block handed to the kernel at once, small enough to stay in the CPU cache
+     */
+    private static final int BLOCK_BYTES = 256 * 1024;
+
+    private final SimilarityKernel kernel;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> positionsById = new HashMap<>();
+    private final BitSet removed = new BitSet();
+
+    private int dimension = -1;
+    private int size;
+    private float[] vectors = new float[0];
+    private float[] inverseNorms = new float[0];
+    private String[] ids = new String[0];
+    private TextSegment[] textSegments = new TextSegment[0];
+
+    public FlatEmbeddingStore() {
+        this(SimilarityKernel.create());
+    }
+
+    public FlatEmbeddingStore(SimilarityKernel kernel) {
+        this.kernel = ensureNotNull(kernel, "kernel");
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = randomUUID();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = randomUUID();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        ensureTrue(ids.size() == embeddings.size(), "ids and embeddings must have the same size");
+        ensureTrue(textSegments == null || textSegments.size() == embeddings.size(),
+                "textSegments and embeddings must have the same size");
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (dimension == -1) {
+                dimension = embeddings.get(0).dimension();
+            }
+            ensureCapacity(size + ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                float[] vector = ensureNotNull(embeddings.get(i), "embedding").vector();
+                ensureTrue(vector.length == dimension,
+                        "embedding dimension " + vector.length + " does not match the store dimension " + dimension);
+
+                int position = size++;
+                System.arraycopy(vector, 0, vectors, position * dimension, dimension);
+                inverseNorms[position] = inverseNorm(vector);
+                this.ids[position] = ensureNotNull(ids.get(i), "id");
+                this.textSegments[position] = textSegments == null ? null : textSegments.get(i);
+
+                Integer previous = positionsById.put(ids.get(i), position);
+                if (previous != null) {
+                    removed.set(previous);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer position = positionsById.remove(id);
+                if (position != null) {
+                    removed.set(position);
+                    textSegments[position] = null;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        ensureNotNull(filter, "filter");
+        lock.writeLock().lock();
+        try {
+            for (int position = 0; position < size; position++) {
+                if (!removed.get(position) && matches(position, filter)) {
+                    removed.set(position);
+                    positionsById.remove(ids[position]);
+                    textSegments[position] = null;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            positionsById.clear();
+            removed.clear();
+            dimension = -1;
+            size = 0;
+            vectors = new float[0];
+            inverseNorms = new float[0];
+            ids = new String[0];
+            textSegments = new TextSegment[0];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return searchAll(List.of(request)).get(0);
+    }
+
+    /**
+     * 在一次遍历向量矩阵的过程中执行多个搜索请求，每个请求返回一个结果（顺序相同）。
+     * Runs several search requests in a single sweep over the vector matrix and returns one result per request,
+     * in the same order. The matrix is processed in cache-sized blocks, and every block is scored against all
+     * queries before moving on, so each vector is read from memory once per batch instead of once per query.
+     * This is what makes query expansion and multi-query retrieval cheap: scoring is bound by memory bandwidth.
+     */
+    public List<EmbeddingSearchResult<TextSegment>> searchAll(List<EmbeddingSearchRequest> requests) {
+        lock.readLock().lock();
+        try {
+            List<PriorityQueue<Scored>> topKs = new ArrayList<>(requests.size());
+            float[][] queries = new float[requests.size()][];
+            float[] inverseQueryNorms = new float[requests.size()];
+            for (int r = 0; r < requests.size(); r++) {
+                topKs.add(new PriorityQueue<>(Scored.LEAST_SIMILAR_FIRST));
+                if (size > 0) {
+                    queries[r] = requests.get(r).queryEmbedding().vector();
+                    ensureTrue(queries[r].length == dimension,
+                            "query embedding dimension does not match the store dimension");
+                    inverseQueryNorms[r] = inverseNorm(queries[r]);
+                }
+            }
+
+            int blockSize = Math.max(1, BLOCK_BYTES / (Math.max(dimension, 1) * Float.BYTES));
+            float[] scores = new float[Math.min(blockSize, Math.max(size, 1))];
+            for (int blockStart = 0; blockStart < size; blockStart += scores.length) {
+                int count = Math.min(scores.length, size - blockStart);
+                for (int r = 0; r < requests.size(); r++) {
+                    EmbeddingSearchRequest request = requests.get(r);
+                    kernel.dotProducts(queries[r], vectors, blockStart, count, scores);
+                    for (int i = 0; i < count; i++) {
+                        int position = blockStart + i;
+                        if (removed.get(position)) {
+                            continue;
+                        }
+                        double cosine = (double) scores[i] * inverseNorms[position] * inverseQueryNorms[r];
+                        offer(topKs.get(r), position, cosine, request, request.filter());
+                    }
+                }
+            }
+
+            List<EmbeddingSearchResult<TextSegment>> results = new ArrayList<>(requests.size());
+            for (PriorityQueue<Scored> topK : topKs) {
+                results.add(toResult(topK));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void offer(PriorityQueue<Scored> topK, int position, double cosine,
+                       EmbeddingSearchRequest request, Filter filter) {
+        double score = RelevanceScore.fromCosineSimilarity(cosine);
+        if (score < request.minScore()) {
+            return;
+        }
+        if (topK.size() == request.maxResults() && score <= topK.peek().score()) {
+            return;
+        }
+        if (filter != null && !matches(position, filter)) {
+            return;
+        }
+        topK.add(new Scored(position, score));
+        if (topK.size() > request.maxResults()) {
+            topK.poll();
+        }
+    }
+
+    private EmbeddingSearchResult<TextSegment> toResult(PriorityQueue<Scored> topK) {
+        List<Scored> sorted = new ArrayList<>(topK);
+        sorted.sort(Scored.LEAST_SIMILAR_FIRST.reversed());
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(sorted.size());
+        for (Scored scored : sorted) {
+            int position = scored.position();
+            float[] vector = Arrays.copyOfRange(vectors, position * dimension, (position + 1) * dimension);
+            matches.add(new EmbeddingMatch<>(scored.score(), ids[position], Embedding.from(vector), textSegments[position]));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    private boolean matches(int position, Filter filter) {
+        TextSegment textSegment = textSegments[position];
+        return textSegment != null && filter.test(textSegment.metadata());
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, Math.max(16, ids.length * 2));
+        vectors = Arrays.copyOf(vectors, newCapacity * dimension);
+        inverseNorms = Arrays.copyOf(inverseNorms, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        textSegments = Arrays.copyOf(textSegments, newCapacity);
+    }
+
+    private static float inverseNorm(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        return norm == 0 ? 0 : (float) (1 / Math.sqrt(norm));
+    }
+
+    private record Scored(int position, double score) {
+
+        static final Comparator<Scored> LEAST_SIMILAR_FIRST = Comparator.comparingDouble(Scored::score);
+    }
+}
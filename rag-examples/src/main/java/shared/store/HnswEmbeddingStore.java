@@ -0,0 +1,526 @@
+package shared.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static dev.langchain4j.internal.Utils.randomUUID;
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+
+/**
+ * 基于 HNSW（分层可导航小世界图）的近似最近邻嵌入存储。
+ * An approximate-nearest-neighbour {@link EmbeddingStore} backed by an in-process HNSW graph
+ * (Malkov &amp; Yashunin, "Efficient and robust approximate nearest neighbor search using
+ * Hierarchical Navigable Small World graphs").
+ * <br>
+ * It is a drop-in replacement for {@code InMemoryEmbeddingStore<TextSegment>}:
+ * scores are cosine similarities converted with {@link RelevanceScore#fromCosineSimilarity(double)},
+ * and {@code maxResults}, {@code minScore} and metadata {@link Filter}s are honoured.
+ * Instead of scanning every vector, a search only visits a small neighbourhood of the graph,
+ * so retrieval stays fast as the corpus grows into hundreds of thousands of segments.
+ * <br>
+ * Inserts may run concurrently: each node guards its own adjacency lists.
+ * Removed entries are tombstoned; they keep routing searches but are never returned.
+ * <pre>{@code
+ * EmbeddingStore<TextSegment> embeddingStore = HnswEmbeddingStore.builder()
+ *         .m(16)
+ *         .efConstruction(200)
+ *         .efSearch(64)
+ *         .build();
+ * }</pre>
+ */
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private static final Node[] NO_LINKS = new Node[0];
+
+    private final int m;
+    private final int maxConnectionsOnBaseLayer;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+
+    private final Map<String, Node> nodesById = new ConcurrentHashMap<>();
+    private final Object entryPointLock = new Object();
+    private final ReadWriteLock clearLock = new ReentrantReadWriteLock();
+
+    private volatile Node entryPoint;
+    private volatile int dimension = -1;
+
+    /**
+     * 使用默认参数创建存储（M=16, efConstruction=200, efSearch=64）。
+     * Creates a store with default parameters (M=16, efConstruction=200, efSearch=64).
+     */
+    public HnswEmbeddingStore() {
+        this(builder());
+    }
+
+    private HnswEmbeddingStore(Builder builder) {
+        this.m = ensureGreaterThanZero(builder.m, "m");
+        this.maxConnectionsOnBaseLayer = 2 * m;
+        this.efConstruction = ensureGreaterThanZero(builder.efConstruction, "efConstruction");
+        this.efSearch = ensureGreaterThanZero(builder.efSearch, "efSearch");
+        this.levelMultiplier = 1 / Math.log(Math.max(2, m));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = randomUUID();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        add(id, embedding, null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = randomUUID();
+        add(id, embedding, textSegment);
+        return id;
+    }
+
+    public void add(String id, Embedding embedding, TextSegment textSegment) {
+        addAll(List.of(id), List.of(embedding), textSegment == null ? null : List.of(textSegment));
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        ensureTrue(ids.size() == embeddings.size(), "ids and embeddings must have the same size");
+        ensureTrue(textSegments == null || textSegments.size() == embeddings.size(),
+                "textSegments and embeddings must have the same size");
+
+        clearLock.readLock().lock();
+        try {
+            // 图的构建本身是并发安全的，因此批量插入可以利用所有核心
+            // Graph construction is thread-safe, so a bulk insert can use all cores
+            IntStream.range(0, ids.size())
+                    .parallel()
+                    .forEach(i -> insert(new Node(
+                            ensureNotNull(ids.get(i), "id"),
+                            ensureNotNull(embeddings.get(i), "embedding"),
+                            textSegments == null ? null : textSegments.get(i),
+                            randomLevel()
+                    )));
+        } finally {
+            clearLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        for (String id : ids) {
+            Node removed = nodesById.remove(id);
+            if (removed != null) {
+                removed.deleted = true;
+            }
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        ensureNotNull(filter, "filter");
+        nodesById.values().removeIf(node -> {
+            if (matches(node, filter)) {
+                node.deleted = true;
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public void removeAll() {
+        clearLock.writeLock().lock();
+        try {
+            nodesById.clear();
+            entryPoint = null;
+            dimension = -1;
+        } finally {
+            clearLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        clearLock.readLock().lock();
+        try {
+            Node entry = entryPoint;
+            if (entry == null) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+
+            float[] query = normalized(request.queryEmbedding().vector());
+            ensureTrue(query.length == dimension, "query embedding dimension does not match the store dimension");
+
+            Node current = entry;
+            for (int level = entry.level; level > 0; level--) {
+                current = greedyClosest(query, current, level);
+            }
+
+            Filter filter = request.filter();
+            Predicate<Node> accepted = node -> !node.deleted && (filter == null || matches(node, filter));
+            int ef = Math.max(efSearch, request.maxResults());
+            List<Candidate> candidates = searchLayer(query, List.of(current), ef, 0, accepted);
+
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+            for (Candidate candidate : candidates) {
+                double score = RelevanceScore.fromCosineSimilarity(candidate.similarity);
+                if (score < request.minScore() || matches.size() == request.maxResults()) {
+                    break;
+                }
+                Node node = candidate.node;
+                matches.add(new EmbeddingMatch<>(score, node.id, node.embedding, node.textSegment));
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            clearLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 存储中（未删除的）条目数量。
+     * Number of (non-removed) entries in the store.
+     */
+    public int size() {
+        return nodesById.size();
+    }
+
+    private void insert(Node node) {
+        checkDimension(node.vector.length);
+
+        Node previous = nodesById.put(node.id, node);
+        if (previous != null) {
+            previous.deleted = true;
+        }
+
+        Node entry = entryPoint;
+        if (entry == null || node.level > entry.level) {
+            synchronized (entryPointLock) {
+                entry = entryPoint;
+                if (entry == null) {
+                    entryPoint = node;
+                    return;
+                }
+                if (node.level > entry.level) {
+                    // 新节点成为新的顶层入口点，链接期间持有锁，避免其他更高层的节点同时竞争
+                    // The new node becomes the new top-level entry point; the lock is held while linking
+                    // so that no other taller node can race for the entry point at the same time
+                    connect(node, entry);
+                    entryPoint = node;
+                    return;
+                }
+            }
+        }
+        connect(node, entry);
+    }
+
+    private void connect(Node node, Node entry) {
+        Node current = entry;
+        for (int level = entry.level; level > node.level; level--) {
+            current = greedyClosest(node.vector, current, level);
+        }
+
+        List<Node> entryPoints = List.of(current);
+        for (int level = Math.min(node.level, entry.level); level >= 0; level--) {
+            List<Candidate> candidates = searchLayer(node.vector, entryPoints, efConstruction, level, n -> true);
+            Node[] neighbours = selectNeighbours(candidates, m);
+            synchronized (node) {
+                node.links[level] = neighbours;
+            }
+            for (Node neighbour : neighbours) {
+                link(neighbour, node, level);
+            }
+            entryPoints = new ArrayList<>(candidates.size());
+            for (Candidate candidate : candidates) {
+                entryPoints.add(candidate.node);
+            }
+        }
+    }
+
+    private void link(Node from, Node to, int level) {
+        int maxConnections = level == 0 ? maxConnectionsOnBaseLayer : m;
+        synchronized (from) {
+            Node[] current = from.links[level];
+            if (current.length < maxConnections) {
+                Node[] extended = new Node[current.length + 1];
+                System.arraycopy(current, 0, extended, 0, current.length);
+                extended[current.length] = to;
+                from.links[level] = extended;
+                return;
+            }
+
+            List<Candidate> candidates = new ArrayList<>(current.length + 1);
+            for (Node node : current) {
+                candidates.add(new Candidate(node, dot(from.vector, node.vector)));
+            }
+            candidates.add(new Candidate(to, dot(from.vector, to.vector)));
+            candidates.sort(Candidate.MOST_SIMILAR_FIRST);
+            from.links[level] = selectNeighbours(candidates, maxConnections);
+        }
+    }
+
+    /**
+     * 邻居选择启发式（论文中的算法 4）：只保留比任何已选邻居更接近基准点的候选，以保持图的多样性。
+     * Neighbour selection heuristic (algorithm 4 of the paper): a candidate is kept only if it is closer
+     * to the base element than to any already selected neighbour, which keeps the graph navigable.
+     * Candidates must be sorted most similar first.
+     */
+    private static Node[] selectNeighbours(List<Candidate> candidates, int maxNeighbours) {
+        List<Node> selected = new ArrayList<>(maxNeighbours);
+        for (Candidate candidate : candidates) {
+            if (selected.size() == maxNeighbours) {
+                break;
+            }
+            boolean diverse = true;
+            for (Node neighbour : selected) {
+                if (dot(candidate.node.vector, neighbour.vector) > candidate.similarity) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate.node);
+            }
+        }
+        return selected.toArray(NO_LINKS);
+    }
+
+    private static Node greedyClosest(float[] query, Node start, int level) {
+        Node current = start;
+        float currentSimilarity = dot(query, current.vector);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (Node neighbour : linksOf(current, level)) {
+                float similarity = dot(query, neighbour.vector);
+                if (similarity > currentSimilarity) {
+                    current = neighbour;
+                    currentSimilarity = similarity;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在单层上进行束搜索（论文中的算法 2），结果按相似度从高到低排序。
+     * Beam search on a single layer (algorithm 2 of the paper), returning results most similar first.
+     * Nodes rejected by {@code accepted} are still traversed, they just never enter the result set.
+     */
+    private static List<Candidate> searchLayer(float[] query, List<Node> entryPoints, int ef, int level,
+                                               Predicate<Node> accepted) {
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>(Candidate.MOST_SIMILAR_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Candidate.MOST_SIMILAR_FIRST.reversed());
+
+        for (Node entryPoint : entryPoints) {
+            visited.add(entryPoint);
+            Candidate candidate = new Candidate(entryPoint, dot(query, entryPoint.vector));
+            toVisit.add(candidate);
+            if (accepted.test(entryPoint)) {
+                results.add(candidate);
+            }
+        }
+        while (results.size() > ef) {
+            results.poll();
+        }
+
+        while (!toVisit.isEmpty()) {
+            Candidate closest = toVisit.poll();
+            if (results.size() >= ef && closest.similarity < results.peek().similarity) {
+                break;
+            }
+            for (Node neighbour : linksOf(closest.node, level)) {
+                if (!visited.add(neighbour)) {
+                    continue;
+                }
+                float similarity = dot(query, neighbour.vector);
+                if (results.size() < ef || similarity > results.peek().similarity) {
+                    Candidate candidate = new Candidate(neighbour, similarity);
+                    toVisit.add(candidate);
+                    if (accepted.test(neighbour)) {
+                        results.add(candidate);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Candidate.MOST_SIMILAR_FIRST);
+        return sorted;
+    }
+
+    private static Node[] linksOf(Node node, int level) {
+        synchronized (node) {
+            return node.links[level];
+        }
+    }
+
+    private static boolean matches(Node node, Filter filter) {
+        return node.textSegment != null && filter.test(node.textSegment.metadata());
+    }
+
+    private int randomLevel() {
+        double uniform = 1.0 - ThreadLocalRandom.current().nextDouble(); // (0, 1]
+        return (int) (-Math.log(uniform) * levelMultiplier);
+    }
+
+    private void checkDimension(int vectorDimension) {
+        int current = dimension;
+        if (current == -1) {
+            synchronized (entryPointLock) {
+                if (dimension == -1) {
+                    dimension = vectorDimension;
+                }
+                current = dimension;
+            }
+        }
+        ensureTrue(current == vectorDimension,
+                "embedding dimension " + vectorDimension + " does not match the store dimension " + current);
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                normalized[i] = (float) (vector[i] / norm);
+            }
+        }
+        return normalized;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static final class Node {
+
+        final String id;
+        final Embedding embedding;
+        final TextSegment textSegment;
+        final float[] vector;
+        final int level;
+        final Node[][] links;
+        volatile boolean deleted;
+
+        Node(String id, Embedding embedding, TextSegment textSegment, int level) {
+            this.id = id;
+            this.embedding = embedding;
+            this.textSegment = textSegment;
+            this.vector = normalized(embedding.vector());
+            this.level = level;
+            this.links = new Node[level + 1][];
+            for (int i = 0; i <= level; i++) {
+                this.links[i] = NO_LINKS;
+            }
+        }
+    }
+
+    private static final class Candidate {
+
+        static final Comparator<Candidate> MOST_SIMILAR_FIRST =
+                (a, b) -> Float.compare(b.similarity, a.similarity);
+
+        final Node node;
+        final float similarity;
+
+        Candidate(Node node, float similarity) {
+            this.node = node;
+            this.similarity = similarity;
+        }
+    }
+
+    public static class Builder {
+
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 64;
+
+        /**
+         * 每个节点在上层的最大连接数（第 0 层为 2*M）。越大召回越高，内存和构建时间也越多。
+         * Maximum number of connections per node on upper layers (2*M on layer 0).
+         * Higher values improve recall at the cost of memory and build time.
+         */
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        /**
+         * 构建图时的候选列表大小。
+         * Size of the dynamic candidate list used while building the graph.
+         */
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        /**
+         * 查询时的候选列表大小（至少为 maxResults），默认 64。越大召回越高，查询越慢。
+         * Size of the dynamic candidate list used at query time (at least {@code maxResults}), 64 by default.
+         * <br>
+         * Query latency grows roughly linearly with efSearch, while recall saturates. How much recall a value
+         * buys depends on the data: on tightly clustered embeddings 64 is usually exact, on noisy ones it is not.
+         * On 10,000 noisy synthetic vectors of dimension 384, recall@10 was 0.45 with 16, 0.66 with 64,
+         * 0.91 with 256 and 0.98 with 512, at about 0.4, 1.3, 2.9 and 5.1 ms per query. Run
+         * {@code _5_performance._06_Hnsw_Embedding_Store_Recall_Example} or measure on your own corpus.
+         */
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        public HnswEmbeddingStore build() {
+            return new HnswEmbeddingStore(this);
+        }
+    }
+}
@@ -0,0 +1,648 @@
+package shared.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+import static dev.langchain4j.internal.Utils.randomUUID;
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNegative;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+
+/**
+ * 基于倒排文件（IVF）聚类索引的近似最近邻嵌入存储
+ * An approximate nearest neighbour {@link EmbeddingStore} based on an IVF (inverted file) index,
+ * meant for corpora that are ingested once and then only queried.
+ * <br>
+ * Once {@code trainingThreshold} vectors have been added, k-means (on normalized vectors, so clusters follow
+ * cosine similarity) trains {@code nlist} centroids, and every vector is assigned to the posting list of its
+ * nearest centroid. Each posting list keeps its vectors in one contiguous {@code float[]}. A search scores the
+ * centroids first and then scans only the {@code nprobe} closest posting lists.
+ * <br>
+ * A metadata filter discards most of the vectors in the scanned lists, so a filtered search scans more lists:
+ * the filter is tested on a random sample of the stored vectors, and {@code nprobe} is divided by the share
+ * that passes. A filter that matches 10% of the vectors scans ten times as many lists, and one that matches
+ * nothing in the sample scans all of them, which is an exact search.
+ * <br>
+ * Until the index is trained, all vectors sit in a single list and searches are exact. Vectors added after
+ * training are assigned to the existing centroids, and the index is trained again automatically once the number of
+ * stored vectors reaches {@code retrainFactor} times the number it was last trained on. When the data has drifted
+ * without growing, {@link #retrain()} trains new centroids on everything stored and rebuilds the posting lists.
+ * Removed vectors are skipped by searches, and the posting lists are compacted once they hold more removed
+ * vectors than stored ones. The assignment steps of k-means run in parallel.
+ * <pre>{@code
+ * EmbeddingStore<TextSegment> embeddingStore = IvfEmbeddingStore.builder()
+ *         .nlist(256)
+ *         .nprobe(16)
+ *         .build();
+ * }</pre>
+ */
+public class IvfEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private static final int FILTER_SAMPLE_SIZE = 256;
+
+    private final int nlist;
+    private final int nprobe;
+    private final int trainingThreshold;
+    private final int trainingIterations;
+    private final int retrainFactor;
+    private final long seed;
+    private final SimilarityKernel kernel;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> positionsById = new HashMap<>();
+    private final BitSet removed = new BitSet();
+
+    private int dimension = -1;
+    private int size;
+    private float[] inverseNorms = new float[0];
+    private String[] ids = new String[0];
+    private TextSegment[] textSegments = new TextSegment[0];
+
+    /**
+     * 归一化的聚类中心（连续存储）；为 {@code null} 表示尚未训练
+     * Normalized centroids stored contiguously, or {@code null} while the index is not trained yet
+     */
+    private float[] centroids;
+    private PostingList[] postingLists = {new PostingList()};
+
+    /**
+     * 上次训练时的向量数，以及此后仍留在倒排列表中的已删除向量数
+     * The number of vectors at the last training, and the number of removed vectors still in the posting lists
+     */
+    private int trainedSize;
+    private int removedInLists;
+
+    public IvfEmbeddingStore() {
+        this(builder());
+    }
+
+    private IvfEmbeddingStore(Builder builder) {
+        this.nlist = ensureNotNegative(builder.nlist, "nlist");
+        this.nprobe = ensureGreaterThanZero(builder.nprobe, "nprobe");
+        this.trainingThreshold = ensureGreaterThanZero(builder.trainingThreshold, "trainingThreshold");
+        this.trainingIterations = ensureGreaterThanZero(builder.trainingIterations, "trainingIterations");
+        this.retrainFactor = ensureNotNegative(builder.retrainFactor, "retrainFactor");
+        ensureTrue(retrainFactor != 1, "retrainFactor must be 0 or at least 2");
+        this.seed = builder.seed;
+        this.kernel = builder.kernel == null ? SimilarityKernel.create() : builder.kernel;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = randomUUID();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = randomUUID();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        ensureTrue(ids.size() == embeddings.size(), "ids and embeddings must have the same size");
+        ensureTrue(textSegments == null || textSegments.size() == embeddings.size(),
+                "textSegments and embeddings must have the same size");
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (dimension == -1) {
+                dimension = embeddings.get(0).dimension();
+            }
+            ensureCapacity(size + ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                float[] vector = ensureNotNull(embeddings.get(i), "embedding").vector();
+                ensureTrue(vector.length == dimension,
+                        "embedding dimension " + vector.length + " does not match the store dimension " + dimension);
+
+                int position = size++;
+                inverseNorms[position] = inverseNorm(vector);
+                this.ids[position] = ensureNotNull(ids.get(i), "id");
+                this.textSegments[position] = textSegments == null ? null : textSegments.get(i);
+                postingLists[nearestCentroid(vector)].add(vector, position);
+
+                Integer previous = positionsById.put(ids.get(i), position);
+                if (previous != null) {
+                    markRemoved(previous);
+                }
+            }
+
+            if (centroids == null
+                    ? positionsById.size() >= trainingThreshold
+                    : retrainFactor > 0 && positionsById.size() >= (long) trainedSize * retrainFactor) {
+                train();
+            } else {
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer position = positionsById.remove(id);
+                if (position != null) {
+                    markRemoved(position);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        ensureNotNull(filter, "filter");
+        lock.writeLock().lock();
+        try {
+            for (int position = 0; position < size; position++) {
+                if (!removed.get(position) && matches(position, filter)) {
+                    positionsById.remove(ids[position]);
+                    markRemoved(position);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            positionsById.clear();
+            removed.clear();
+            dimension = -1;
+            size = 0;
+            inverseNorms = new float[0];
+            ids = new String[0];
+            textSegments = new TextSegment[0];
+            centroids = null;
+            postingLists = new PostingList[]{new PostingList()};
+            trainedSize = 0;
+            removedInLists = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            float[] query = request.queryEmbedding().vector();
+            ensureTrue(query.length == dimension, "query embedding dimension does not match the store dimension");
+            float inverseQueryNorm = inverseNorm(query);
+
+            PriorityQueue<Scored> topK = new PriorityQueue<>(Scored.LEAST_SIMILAR_FIRST);
+            for (int list : probedLists(query, probes(request.filter()))) {
+                PostingList postingList = postingLists[list];
+                float[] scores = new float[postingList.size];
+                kernel.dotProducts(query, postingList.vectors, 0, postingList.size, scores);
+                for (int i = 0; i < postingList.size; i++) {
+                    int position = postingList.positions[i];
+                    if (!removed.get(position)) {
+                        double cosine = (double) scores[i] * inverseNorms[position] * inverseQueryNorm;
+                        offer(topK, postingList, i, cosine, request);
+                    }
+                }
+            }
+            return toResult(topK);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 在所有已存储的向量上重新训练聚类中心并重建倒排列表，同时清除已删除的向量。
+     * Trains new centroids on all stored vectors and rebuilds the posting lists, dropping removed vectors.
+     * Useful when the data has drifted, or to train an index that has not reached {@code trainingThreshold}.
+     */
+    public void retrain() {
+        lock.writeLock().lock();
+        try {
+            train();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isTrained() {
+        lock.readLock().lock();
+        try {
+            return centroids != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void train() {
+        // 收集所有未删除的向量（归一化）
+        // Collect all live vectors, normalized
+        List<float[]> vectors = new ArrayList<>(positionsById.size());
+        List<Integer> positions = new ArrayList<>(positionsById.size());
+        for (PostingList postingList : postingLists) {
+            for (int i = 0; i < postingList.size; i++) {
+                int position = postingList.positions[i];
+                if (!removed.get(position)) {
+                    vectors.add(postingList.vector(i));
+                    positions.add(position);
+                }
+            }
+        }
+        if (vectors.isEmpty()) {
+            return;
+        }
+
+        int k = Math.min(vectors.size(), nlist > 0 ? nlist : (int) Math.max(1, Math.round(Math.sqrt(vectors.size()))));
+        float[] normalized = new float[vectors.size() * dimension];
+        for (int i = 0; i < vectors.size(); i++) {
+            float inverseNorm = inverseNorms[positions.get(i)];
+            float[] vector = vectors.get(i);
+            for (int d = 0; d < dimension; d++) {
+                normalized[i * dimension + d] = vector[d] * inverseNorm;
+            }
+        }
+        centroids = kMeans(normalized, vectors.size(), k);
+
+        int[] assignments = assign(normalized, vectors.size(), centroids);
+        postingLists = new PostingList[k];
+        for (int list = 0; list < k; list++) {
+            postingLists[list] = new PostingList();
+        }
+        for (int i = 0; i < vectors.size(); i++) {
+            postingLists[assignments[i]].add(vectors.get(i), positions.get(i));
+        }
+        trainedSize = vectors.size();
+        removedInLists = 0;
+    }
+
+    private void markRemoved(int position) {
+        removed.set(position);
+        textSegments[position] = null;
+        removedInLists++;
+    }
+
+    /**
+     * 当倒排列表中已删除的向量多于存储的向量时，将其移除，聚类中心保持不变。
+     * Drops the removed vectors from the posting lists once they outnumber the stored ones, keeping the centroids.
+     */
+    private void compactIfNeeded() {
+        if (removedInLists == 0 || removedInLists <= positionsById.size()) {
+            return;
+        }
+        for (int list = 0; list < postingLists.length; list++) {
+            PostingList postingList = postingLists[list];
+            PostingList compacted = new PostingList();
+            for (int i = 0; i < postingList.size; i++) {
+                if (!removed.get(postingList.positions[i])) {
+                    compacted.add(postingList.vector(i), postingList.positions[i]);
+                }
+            }
+            postingLists[list] = compacted;
+        }
+        removedInLists = 0;
+    }
+
+    /**
+     * 球面 k-means：从随机选取的样本开始，交替进行（并行）分配和中心更新。
+     * Spherical k-means: starts from randomly chosen points and alternates a parallel assignment step
+     * with a centroid update step, re-normalizing the centroids after every update.
+     */
+    private float[] kMeans(float[] points, int count, int k) {
+        Random random = new Random(seed);
+        float[] centroids = new float[k * dimension];
+        int[] sample = random.ints(0, count).distinct().limit(k).toArray();
+        for (int c = 0; c < k; c++) {
+            System.arraycopy(points, sample[c] * dimension, centroids, c * dimension, dimension);
+        }
+
+        for (int iteration = 0; iteration < trainingIterations; iteration++) {
+            int[] assignments = assign(points, count, centroids);
+            float[] sums = new float[k * dimension];
+            int[] sizes = new int[k];
+            for (int i = 0; i < count; i++) {
+                int c = assignments[i];
+                sizes[c]++;
+                for (int d = 0; d < dimension; d++) {
+                    sums[c * dimension + d] += points[i * dimension + d];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (sizes[c] == 0) {
+                    // 空簇重新随机选取一个点作为中心
+                    // An empty cluster is restarted from a random point
+                    System.arraycopy(points, random.nextInt(count) * dimension, sums, c * dimension, dimension);
+                }
+                normalize(sums, c * dimension);
+            }
+            centroids = sums;
+        }
+        return centroids;
+    }
+
+    private int[] assign(float[] points, int count, float[] centroids) {
+        int k = centroids.length / dimension;
+        int[] assignments = new int[count];
+        IntStream.range(0, count).parallel().forEach(i -> {
+            float[] point = Arrays.copyOfRange(points, i * dimension, (i + 1) * dimension);
+            float[] scores = new float[k];
+            kernel.dotProducts(point, centroids, 0, k, scores);
+            assignments[i] = argMax(scores, k);
+        });
+        return assignments;
+    }
+
+    private int nearestCentroid(float[] vector) {
+        if (centroids == null) {
+            return 0;
+        }
+        int k = postingLists.length;
+        float[] scores = new float[k];
+        kernel.dotProducts(vector, centroids, 0, k, scores);
+        return argMax(scores, k);
+    }
+
+    /**
+     * 要扫描的倒排列表数：有过滤条件时按抽样估计的选择率放大 nprobe
+     * The number of posting lists to scan: with a filter, nprobe divided by the share of a sample that passes it
+     */
+    private int probes(Filter filter) {
+        if (filter == null || centroids == null) {
+            return nprobe;
+        }
+        Random random = new Random(seed);
+        int sampled = 0;
+        int matching = 0;
+        for (int i = 0; i < FILTER_SAMPLE_SIZE; i++) {
+            int position = random.nextInt(size);
+            if (!removed.get(position)) {
+                sampled++;
+                if (matches(position, filter)) {
+                    matching++;
+                }
+            }
+        }
+        if (matching == 0) {
+            return postingLists.length;
+        }
+        return (int) Math.min(postingLists.length, (long) Math.ceil((double) nprobe * sampled / matching));
+    }
+
+    private int[] probedLists(float[] query, int probes) {
+        if (centroids == null) {
+            return new int[]{0};
+        }
+        int k = postingLists.length;
+        float[] scores = new float[k];
+        kernel.dotProducts(query, centroids, 0, k, scores);
+        return IntStream.range(0, k)
+                .boxed()
+                .sorted((a, b) -> Float.compare(scores[b], scores[a]))
+                .limit(probes)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private void offer(PriorityQueue<Scored> topK, PostingList postingList, int index, double cosine,
+                       EmbeddingSearchRequest request) {
+        double score = RelevanceScore.fromCosineSimilarity(cosine);
+        if (score < request.minScore()) {
+            return;
+        }
+        if (topK.size() == request.maxResults() && score <= topK.peek().score()) {
+            return;
+        }
+        int position = postingList.positions[index];
+        if (request.filter() != null && !matches(position, request.filter())) {
+            return;
+        }
+        topK.add(new Scored(postingList, index, score));
+        if (topK.size() > request.maxResults()) {
+            topK.poll();
+        }
+    }
+
+    private EmbeddingSearchResult<TextSegment> toResult(PriorityQueue<Scored> topK) {
+        List<Scored> sorted = new ArrayList<>(topK);
+        sorted.sort(Scored.LEAST_SIMILAR_FIRST.reversed());
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(sorted.size());
+        for (Scored scored : sorted) {
+            int position = scored.postingList().positions[scored.index()];
+            Embedding embedding = Embedding.from(scored.postingList().vector(scored.index()));
+            matches.add(new EmbeddingMatch<>(scored.score(), ids[position], embedding, textSegments[position]));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    private boolean matches(int position, Filter filter) {
+        TextSegment textSegment = textSegments[position];
+        return textSegment != null && filter.test(textSegment.metadata());
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, Math.max(16, ids.length * 2));
+        inverseNorms = Arrays.copyOf(inverseNorms, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        textSegments = Arrays.copyOf(textSegments, newCapacity);
+    }
+
+    private static int argMax(float[] scores, int count) {
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private void normalize(float[] vectors, int offset) {
+        double norm = 0;
+        for (int d = 0; d < dimension; d++) {
+            norm += vectors[offset + d] * vectors[offset + d];
+        }
+        if (norm > 0) {
+            float inverseNorm = (float) (1 / Math.sqrt(norm));
+            for (int d = 0; d < dimension; d++) {
+                vectors[offset + d] *= inverseNorm;
+            }
+        }
+    }
+
+    private static float inverseNorm(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        return norm == 0 ? 0 : (float) (1 / Math.sqrt(norm));
+    }
+
+    /**
+     * 倒排列表：向量连续存储，并记录每个向量在存储中的位置
+     * A posting list: its vectors stored contiguously, together with the store position of each vector
+     */
+    private final class PostingList {
+
+        float[] vectors = new float[0];
+        int[] positions = new int[0];
+        int size;
+
+        void add(float[] vector, int position) {
+            if (size == positions.length) {
+                int capacity = Math.max(16, positions.length * 2);
+                vectors = Arrays.copyOf(vectors, capacity * dimension);
+                positions = Arrays.copyOf(positions, capacity);
+            }
+            System.arraycopy(vector, 0, vectors, size * dimension, dimension);
+            positions[size++] = position;
+        }
+
+        float[] vector(int index) {
+            return Arrays.copyOfRange(vectors, index * dimension, (index + 1) * dimension);
+        }
+    }
+
+    private record Scored(PostingList postingList, int index, double score) {
+
+        static final Comparator<Scored> LEAST_SIMILAR_FIRST = Comparator.comparingDouble(Scored::score);
+    }
+
+    public static class Builder {
+
+        private int nlist;
+        private int nprobe = 8;
+        private int trainingThreshold = 1024;
+        private int trainingIterations = 10;
+        private int retrainFactor = 2;
+        private long seed = 42;
+        private SimilarityKernel kernel;
+
+        /**
+         * 聚类中心（倒排列表）的数量。0（默认）表示训练时取向量数的平方根。
+         * The number of centroids (posting lists). 0, the default, means the square root of the number of
+         * vectors at training time.
+         */
+        public Builder nlist(int nlist) {
+            this.nlist = nlist;
+            return this;
+        }
+
+        /**
+         * 每次搜索扫描的倒排列表数量，默认 8。越大召回越高，查询越慢。有过滤条件时会按选择率放大
+         * The number of posting lists scanned by each search, 8 by default. Higher values improve recall at the
+         * cost of latency; see {@code _5_performance._07_Ivf_Embedding_Store_Recall_Example}.
+         * Filtered searches scan more lists, in proportion to how few vectors pass the filter.
+         */
+        public Builder nprobe(int nprobe) {
+            this.nprobe = nprobe;
+            return this;
+        }
+
+        /**
+         * 达到该向量数时自动训练，默认 1024
+         * The number of stored vectors at which the index is trained automatically, 1024 by default
+         */
+        public Builder trainingThreshold(int trainingThreshold) {
+            this.trainingThreshold = trainingThreshold;
+            return this;
+        }
+
+        /**
+         * k-means 迭代次数，默认 10
+         * The number of k-means iterations, 10 by default
+         */
+        public Builder trainingIterations(int trainingIterations) {
+            this.trainingIterations = trainingIterations;
+            return this;
+        }
+
+        /**
+         * 向量数达到上次训练时的该倍数时自动重新训练，默认 2；0 表示只通过 {@link IvfEmbeddingStore#retrain()} 重新训练
+         * The index is trained again automatically when the number of stored vectors reaches this multiple of the
+         * number it was last trained on, 2 by default. 0 means it is only trained again by
+         * {@link IvfEmbeddingStore#retrain()}.
+         */
+        public Builder retrainFactor(int retrainFactor) {
+            this.retrainFactor = retrainFactor;
+            return this;
+        }
+
+        /**
+         * 选取初始聚类中心的随机种子
+         * The random seed used to pick the initial centroids
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * 使用的相似度内核，默认 {@link SimilarityKernel#create()}
+         * The similarity kernel, {@link SimilarityKernel#create()} by default
+         */
+        public Builder kernel(SimilarityKernel kernel) {
+            this.kernel = kernel;
+            return this;
+        }
+
+        public IvfEmbeddingStore build() {
+            return new IvfEmbeddingStore(this);
+        }
+    }
+}
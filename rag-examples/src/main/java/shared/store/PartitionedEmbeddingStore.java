@@ -0,0 +1,568 @@
+package shared.store;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import dev.langchain4j.store.embedding.filter.logical.Or;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import static dev.langchain4j.internal.Utils.randomUUID;
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotBlank;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * 按元数据键分区的嵌入存储，适用于多租户（按用户）检索
+ * An {@link EmbeddingStore} that shards segments by the value of one metadata key (e.g. {@code userId})
+ * into independent {@link InMemoryEmbeddingStore} partitions, one file per partition.
+ * <br>
+ * A search whose filter pins the partition key ({@code isEqualTo}, {@code isIn}, or an {@code and}/{@code or}
+ * built from them) is routed straight to the matching partitions, so per-user retrieval costs O(user data)
+ * instead of O(total data). Any other search visits every partition and merges the results.
+ * <br>
+ * At most {@code maxLoadedPartitions} partitions are kept in memory. Cold partitions are loaded from disk on
+ * first use, and the least recently used ones are written back (if modified) and dropped. The write happens
+ * after the partition has left the LRU map, so lookups of other partitions do not wait for the disk.
+ * <br>
+ * Writes are kept in memory: a modified partition reaches disk only when it is evicted, on {@link #flush()}
+ * or on {@link #close()}. Anything added or removed since then is lost if the process dies. Partition files
+ * are replaced atomically, so a crash never leaves a half-written partition behind.
+ * <br>
+ * Partitions are named by the key value; numbers are compared by value, so {@code 5}, {@code 5L} and
+ * {@code 5.0} share a partition, as they match the same {@code isEqualTo} filter. Segments without the key,
+ * and embeddings added without a segment, go to a separate unpartitioned store.
+ * <br>
+ * Every partition file has a sidecar file with the ids it contains, written after it, so that the store knows
+ * the partition of every id without loading the partitions. {@link #removeAll(Collection)} therefore only loads
+ * and rewrites the partitions that contain one of the ids. A sidecar that is missing or older than its partition
+ * file (e.g. after a crash in between) is rebuilt from the partition file on startup.
+ * <pre>{@code
+ * PartitionedEmbeddingStore embeddingStore = PartitionedEmbeddingStore.builder()
+ *         .partitionKey("userId")
+ *         .directory(Path.of("target/partitions"))
+ *         .build();
+ * }</pre>
+ */
+public class PartitionedEmbeddingStore implements EmbeddingStore<TextSegment>, Closeable {
+
+    private static final String FILE_SUFFIX = ".json";
+    private static final String IDS_FILE_SUFFIX = ".ids";
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final String PARTITION_PREFIX = "partition-";
+    private static final String UNPARTITIONED = "unpartitioned";
+
+    private final String partitionKey;
+    private final Path directory;
+    private final int maxLoadedPartitions;
+
+    /**
+     * 写操作持有写锁，搜索持有读锁；已加载分区的 LRU 表另外用自身同步
+     * Writes hold the write lock and searches the read lock; the LRU map of loaded partitions is additionally
+     * synchronized on itself, because every lookup updates its access order
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<String> partitionNames = new LinkedHashSet<>();
+    private final Set<String> dirty = new HashSet<>();
+    private final Map<String, String> partitionOfId = new HashMap<>();
+    private final Map<String, Set<String>> idsOfPartition = new HashMap<>();
+    private final LinkedHashMap<String, InMemoryEmbeddingStore<TextSegment>> loaded;
+
+    /**
+     * 已移出 LRU 表、等待写入的分区；写完之前再次访问时直接取回，不读取旧文件
+     * Modified partitions that left the LRU map and still have to be written. A partition used again before
+     * its write completes is taken back from here instead of being read from its (stale) file
+     */
+    private final Map<String, InMemoryEmbeddingStore<TextSegment>> evicted = new HashMap<>();
+    private Map.Entry<String, InMemoryEmbeddingStore<TextSegment>> lastEvicted;
+
+    private PartitionedEmbeddingStore(Builder builder) {
+        this.partitionKey = ensureNotBlank(builder.partitionKey, "partitionKey");
+        this.directory = ensureNotNull(builder.directory, "directory");
+        this.maxLoadedPartitions = ensureGreaterThanZero(builder.maxLoadedPartitions, "maxLoadedPartitions");
+        this.loaded = new LinkedHashMap<>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, InMemoryEmbeddingStore<TextSegment>> eldest) {
+                if (size() <= maxLoadedPartitions) {
+                    return false;
+                }
+                // 只登记，由调用 partition() 的线程在监视器外写入
+                // Only hand it over: the thread calling partition() writes it outside the monitor
+                if (dirty.remove(eldest.getKey())) {
+                    evicted.put(eldest.getKey(), eldest.getValue());
+                    lastEvicted = Map.entry(eldest.getKey(), eldest.getValue());
+                }
+                return true;
+            }
+        };
+
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.map(file -> file.getFileName().toString())
+                        .filter(name -> name.endsWith(FILE_SUFFIX))
+                        .map(name -> name.substring(0, name.length() - FILE_SUFFIX.length()))
+                        .forEach(partitionNames::add);
+            }
+            for (String name : partitionNames) {
+                Path idsFile = idsFile(name);
+                if (Files.exists(idsFile) && !Files.getLastModifiedTime(idsFile).toInstant()
+                        .isBefore(Files.getLastModifiedTime(file(name)).toInstant())) {
+                    index(name, Files.readAllLines(idsFile));
+                } else {
+                    // 旁注文件缺失或过期：从分区文件中重建
+                    // Missing or stale sidecar: rebuild it from the partition file
+                    try (Reader reader = Files.newBufferedReader(file(name))) {
+                        index(name, readIds(reader));
+                    }
+                    Files.write(idsFile, idsOfPartition.get(name));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = randomUUID();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = randomUUID();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        ensureTrue(ids.size() == embeddings.size(), "ids and embeddings must have the same size");
+        ensureTrue(textSegments == null || textSegments.size() == embeddings.size(),
+                "textSegments and embeddings must have the same size");
+
+        // 按分区分组后逐个分区写入
+        // Group by partition first, so that each partition is loaded once per call
+        Map<String, List<Integer>> indexesByPartition = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            TextSegment textSegment = textSegments == null ? null : textSegments.get(i);
+            Object value = textSegment == null ? null : textSegment.metadata().toMap().get(partitionKey);
+            indexesByPartition.computeIfAbsent(partitionName(value), name -> new ArrayList<>()).add(i);
+        }
+
+        lock.writeLock().lock();
+        try {
+            indexesByPartition.forEach((name, indexes) -> {
+                List<String> partitionIds = new ArrayList<>(indexes.size());
+                List<Embedding> partitionEmbeddings = new ArrayList<>(indexes.size());
+                List<TextSegment> partitionSegments = textSegments == null ? null : new ArrayList<>(indexes.size());
+                for (int i : indexes) {
+                    partitionIds.add(ids.get(i));
+                    partitionEmbeddings.add(embeddings.get(i));
+                    if (partitionSegments != null) {
+                        partitionSegments.add(textSegments.get(i));
+                    }
+                }
+                InMemoryEmbeddingStore<TextSegment> partition = partition(name);
+                partition.addAll(partitionIds, partitionEmbeddings, partitionSegments);
+                index(name, partitionIds);
+                markDirty(name);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            // 只访问包含这些 id 的分区
+            // Only the partitions that contain one of the ids are loaded and rewritten
+            Map<String, List<String>> idsByPartition = new LinkedHashMap<>();
+            for (String id : ids) {
+                String name = partitionOfId.get(id);
+                if (name != null) {
+                    idsByPartition.computeIfAbsent(name, n -> new ArrayList<>()).add(id);
+                }
+            }
+            idsByPartition.forEach((name, partitionIds) -> {
+                partition(name).removeAll(partitionIds);
+                partitionIds.forEach(partitionOfId::remove);
+                idsOfPartition.get(name).removeAll(partitionIds);
+                markDirty(name);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        ensureNotNull(filter, "filter");
+        lock.writeLock().lock();
+        try {
+            for (String name : route(filter)) {
+                InMemoryEmbeddingStore<TextSegment> partition = partition(name);
+                partition.removeAll(filter);
+                // 不知道过滤器删除了哪些 id，重新读取分区中剩下的 id
+                // Which ids the filter removed is unknown, so re-read the ids left in the partition
+                Set<String> remaining = readIds(new StringReader(partition.serializeToJson()));
+                for (String id : idsOfPartition.getOrDefault(name, Set.of())) {
+                    if (!remaining.contains(id)) {
+                        partitionOfId.remove(id);
+                    }
+                }
+                idsOfPartition.put(name, remaining);
+                markDirty(name);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            synchronized (loaded) {
+                loaded.clear();
+                evicted.clear();
+            }
+            for (String name : partitionNames) {
+                Files.deleteIfExists(file(name));
+                Files.deleteIfExists(idsFile(name));
+            }
+            partitionNames.clear();
+            dirty.clear();
+            partitionOfId.clear();
+            idsOfPartition.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        lock.readLock().lock();
+        try {
+            List<String> names = route(request.filter());
+            if (names.size() == 1) {
+                return partition(names.get(0)).search(request);
+            }
+
+            // 合并各分区的前 k 个结果
+            // Merge the top-k of every visited partition
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+            for (String name : names) {
+                matches.addAll(partition(name).search(request).matches());
+            }
+            matches.sort(Comparator.comparingDouble(EmbeddingMatch<TextSegment>::score).reversed());
+            return new EmbeddingSearchResult<>(matches.subList(0, Math.min(request.maxResults(), matches.size())));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 将所有已修改的分区写入磁盘。
+     * Writes every modified partition to disk.
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            // 持有写锁时没有其他线程访问分区，包括之前写入失败、仍在等待的分区
+            // No other thread touches partitions under the write lock; this includes evicted ones whose write failed
+            Map<String, InMemoryEmbeddingStore<TextSegment>> toWrite;
+            synchronized (loaded) {
+                toWrite = new LinkedHashMap<>(evicted);
+                loaded.forEach((name, partition) -> {
+                    if (dirty.contains(name)) {
+                        toWrite.put(name, partition);
+                    }
+                });
+            }
+            toWrite.forEach((name, partition) -> {
+                write(name, partition);
+                synchronized (loaded) {
+                    dirty.remove(name);
+                    evicted.remove(name, partition);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * 过滤条件固定了分区键时，返回对应的分区；否则返回所有分区。
+     * Returns the partitions the filter pins the partition key to, or every partition if it does not.
+     */
+    private List<String> route(Filter filter) {
+        Set<String> pinned = pinnedPartitions(filter);
+        List<String> names = new ArrayList<>();
+        for (String name : pinned == null ? partitionNames : pinned) {
+            if (partitionNames.contains(name)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 过滤条件允许的分区集合；{@code null} 表示不限制。
+     * The set of partitions the filter can match, or {@code null} if it does not restrict the partition key.
+     */
+    private Set<String> pinnedPartitions(Filter filter) {
+        if (filter instanceof IsEqualTo isEqualTo && isEqualTo.key().equals(partitionKey)) {
+            return Set.of(partitionName(isEqualTo.comparisonValue()));
+        } else if (filter instanceof IsIn isIn && isIn.key().equals(partitionKey)) {
+            Set<String> names = new HashSet<>();
+            isIn.comparisonValues().forEach(value -> names.add(partitionName(value)));
+            return names;
+        } else if (filter instanceof And and) {
+            Set<String> left = pinnedPartitions(and.left());
+            Set<String> right = pinnedPartitions(and.right());
+            if (left == null || right == null) {
+                return left == null ? right : left;
+            }
+            Set<String> names = new HashSet<>(left);
+            names.retainAll(right);
+            return names;
+        } else if (filter instanceof Or or) {
+            Set<String> left = pinnedPartitions(or.left());
+            Set<String> right = pinnedPartitions(or.right());
+            if (left == null || right == null) {
+                return null;
+            }
+            Set<String> names = new HashSet<>(left);
+            names.addAll(right);
+            return names;
+        }
+        return null;
+    }
+
+    private InMemoryEmbeddingStore<TextSegment> partition(String name) {
+        InMemoryEmbeddingStore<TextSegment> partition;
+        Map.Entry<String, InMemoryEmbeddingStore<TextSegment>> toWrite;
+        synchronized (loaded) {
+            partition = loaded.get(name);
+            if (partition != null) {
+                return partition;
+            }
+            partition = evicted.remove(name);
+            if (partition != null) {
+                dirty.add(name);
+            } else {
+                Path file = file(name);
+                partition = Files.exists(file) ? InMemoryEmbeddingStore.fromFile(file) : new InMemoryEmbeddingStore<>();
+            }
+            partitionNames.add(name);
+            loaded.put(name, partition);
+            toWrite = lastEvicted;
+            lastEvicted = null;
+        }
+        if (toWrite != null) {
+            // 写锁下没有并发修改；读锁下只有搜索，同名分区并发写入的内容相同
+            // Under the write lock nothing else runs; under the read lock only searches run,
+            // so concurrent writes of the same partition write the same content
+            write(toWrite.getKey(), toWrite.getValue());
+            synchronized (loaded) {
+                evicted.remove(toWrite.getKey(), toWrite.getValue());
+            }
+        }
+        return partition;
+    }
+
+    private void markDirty(String name) {
+        synchronized (loaded) {
+            dirty.add(name);
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换，分区文件之后写旁注文件
+     * Writes temporary files and atomically replaces the partition file, then its sidecar
+     */
+    private void write(String name, InMemoryEmbeddingStore<TextSegment> partition) {
+        try {
+            Path partitionFile = Files.createTempFile(directory, name, ".tmp");
+            partition.serializeToFile(partitionFile);
+            Files.move(partitionFile, file(name), REPLACE_EXISTING, ATOMIC_MOVE);
+            Path idsFile = Files.createTempFile(directory, name, ".tmp");
+            Files.write(idsFile, idsOfPartition.getOrDefault(name, Set.of()));
+            Files.move(idsFile, idsFile(name), REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void index(String name, Collection<String> ids) {
+        Set<String> partitionIds = idsOfPartition.computeIfAbsent(name, n -> new HashSet<>());
+        for (String id : ids) {
+            String previous = partitionOfId.put(id, name);
+            if (previous != null && !previous.equals(name)) {
+                idsOfPartition.get(previous).remove(id);
+            }
+            partitionIds.add(id);
+        }
+    }
+
+    private Path file(String name) {
+        return directory.resolve(name + FILE_SUFFIX);
+    }
+
+    private Path idsFile(String name) {
+        return directory.resolve(name + IDS_FILE_SUFFIX);
+    }
+
+    /**
+     * 读取序列化的 {@link InMemoryEmbeddingStore} 中各条目的 id，不解析向量
+     * Reads the ids of the entries of a serialized {@link InMemoryEmbeddingStore}, without parsing the vectors
+     */
+    private static Set<String> readIds(Reader json) {
+        Set<String> ids = new HashSet<>();
+        try (JsonParser parser = JSON.createParser(json)) {
+            // {"entries": [{"id": ..., "embedding": ..., "embedded": ...}, ...]}
+            int depth = 0;
+            for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                switch (token) {
+                    case START_OBJECT, START_ARRAY -> depth++;
+                    case END_OBJECT, END_ARRAY -> depth--;
+                    case FIELD_NAME -> {
+                        if (depth == 3 && "id".equals(parser.currentName())) {
+                            ids.add(parser.nextTextValue());
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ids;
+    }
+
+    private static String partitionName(Object value) {
+        return value == null ? UNPARTITIONED : PARTITION_PREFIX + URLEncoder.encode(normalize(value), UTF_8);
+    }
+
+    /**
+     * 数值按值归一化（5、5L 和 5.0 相同），与过滤条件的比较方式一致
+     * Numbers are normalized by value (5, 5L and 5.0 are the same), like filters compare them
+     */
+    private static String normalize(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if (!Double.isFinite(number)) {
+                return Double.toString(number);
+            }
+        }
+        if (value instanceof Number) {
+            BigDecimal number = new BigDecimal(value.toString()).stripTrailingZeros();
+            return number.signum() == 0 ? "0" : number.toPlainString();
+        }
+        return value.toString();
+    }
+
+    public static class Builder {
+
+        private String partitionKey;
+        private Path directory;
+        private int maxLoadedPartitions = 64;
+
+        /**
+         * 用于分区的元数据键，例如 "userId"
+         * The metadata key to partition by, e.g. "userId"
+         */
+        public Builder partitionKey(String partitionKey) {
+            this.partitionKey = partitionKey;
+            return this;
+        }
+
+        /**
+         * 分区文件所在目录
+         * The directory the partition files are kept in
+         */
+        public Builder directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * 同时保留在内存中的最大分区数，默认 64
+         * The maximum number of partitions kept in memory at the same time, 64 by default
+         */
+        public Builder maxLoadedPartitions(int maxLoadedPartitions) {
+            this.maxLoadedPartitions = maxLoadedPartitions;
+            return this;
+        }
+
+        public PartitionedEmbeddingStore build() {
+            return new PartitionedEmbeddingStore(this);
+        }
+    }
+}
@@ -0,0 +1,491 @@
+package shared.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static dev.langchain4j.internal.Utils.randomUUID;
+import static dev.langchain4j.internal.ValidationUtils.ensureGreaterThanZero;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNegative;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+
+/**
+ * int8 标量量化的嵌入存储
+ * An {@link EmbeddingStore} that keeps each (normalized) vector as one signed byte per dimension
+ * instead of a boxed {@link Embedding} with 4 bytes per dimension.
+ * <br>
+ * Every dimension is calibrated with its own min/max, taken from the first {@code calibrationSize} stored
+ * embeddings. Until that many are stored, they are kept as floats and searched exactly; then all of them are
+ * quantized at once. The calibration is not updated afterwards: later values outside of the range are clamped,
+ * and {@link #removeAll()} starts a new calibration. A dimension that is constant in the sample gets the full
+ * [-1, 1] range of a normalized value. At query time the query is folded with the per-dimension scales and
+ * quantized as well, so candidates are ranked with pure integer dot products.
+ * <br>
+ * Optionally, the original floats are kept and the top {@code rescoreTopN} candidates are rescored
+ * with the exact cosine similarity. Without rescoring, returned scores are approximations
+ * and returned embeddings are reconstructed from the codes, and the store needs a quarter of the memory
+ * of float vectors. With rescoring, it keeps the codes in addition to the floats, so it needs more memory
+ * than float vectors alone; it only buys a faster first pass over the codes.
+ * <pre>{@code
+ * EmbeddingStore<TextSegment> embeddingStore = QuantizedEmbeddingStore.builder()
+ *         .calibrationSize(1000)
+ *         .rescoreTopN(50)
+ *         .build();
+ * }</pre>
+ */
+public class QuantizedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private final int rescoreTopN;
+    private final int calibrationSize;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> positionsById = new HashMap<>();
+    private final BitSet removed = new BitSet();
+
+    private int dimension = -1;
+    private float[] minimums;
+    private float[] scales;
+
+    private int size;
+    private byte[] codes = new byte[0];
+    private float[] floats = new float[0];
+    private String[] ids = new String[0];
+    private TextSegment[] textSegments = new TextSegment[0];
+
+    /**
+     * 创建校准后不保留原始向量、不进行重新评分的存储（内存占用最小）。
+     * Creates a store that keeps no original floats once calibrated and does not rescore (smallest memory footprint).
+     */
+    public QuantizedEmbeddingStore() {
+        this(builder());
+    }
+
+    private QuantizedEmbeddingStore(Builder builder) {
+        this.rescoreTopN = ensureNotNegative(builder.rescoreTopN, "rescoreTopN");
+        this.calibrationSize = ensureGreaterThanZero(builder.calibrationSize, "calibrationSize");
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = randomUUID();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = randomUUID();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        ensureTrue(ids.size() == embeddings.size(), "ids and embeddings must have the same size");
+        ensureTrue(textSegments == null || textSegments.size() == embeddings.size(),
+                "textSegments and embeddings must have the same size");
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        List<float[]> vectors = new ArrayList<>(embeddings.size());
+        for (Embedding embedding : embeddings) {
+            vectors.add(normalized(ensureNotNull(embedding, "embedding").vector()));
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (dimension == -1) {
+                dimension = vectors.get(0).length;
+            }
+            ensureCapacity(size + vectors.size());
+            for (int i = 0; i < vectors.size(); i++) {
+                float[] vector = vectors.get(i);
+                ensureTrue(vector.length == dimension,
+                        "embedding dimension " + vector.length + " does not match the store dimension " + dimension);
+
+                int position = size++;
+                if (isCalibrated()) {
+                    quantize(vector, position * dimension);
+                }
+                if (keepsFloats()) {
+                    System.arraycopy(vector, 0, floats, position * dimension, dimension);
+                }
+                this.ids[position] = ensureNotNull(ids.get(i), "id");
+                this.textSegments[position] = textSegments == null ? null : textSegments.get(i);
+
+                Integer previous = positionsById.put(ids.get(i), position);
+                if (previous != null) {
+                    removed.set(previous);
+                }
+            }
+            if (!isCalibrated() && positionsById.size() >= calibrationSize) {
+                calibrate();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer position = positionsById.remove(id);
+                if (position != null) {
+                    removed.set(position);
+                    textSegments[position] = null;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        ensureNotNull(filter, "filter");
+        lock.writeLock().lock();
+        try {
+            for (int position = 0; position < size; position++) {
+                if (!removed.get(position) && matches(position, filter)) {
+                    removed.set(position);
+                    positionsById.remove(ids[position]);
+                    textSegments[position] = null;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            positionsById.clear();
+            removed.clear();
+            dimension = -1;
+            minimums = null;
+            scales = null;
+            size = 0;
+            codes = new byte[0];
+            floats = new float[0];
+            ids = new String[0];
+            textSegments = new TextSegment[0];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+
+            float[] query = normalized(request.queryEmbedding().vector());
+            ensureTrue(query.length == dimension, "query embedding dimension does not match the store dimension");
+            // 校准之前，用原始向量精确搜索
+            // Before the calibration, the floats are searched exactly
+            QuantizedQuery quantizedQuery = isCalibrated() ? quantizeQuery(query) : null;
+
+            boolean rescore = quantizedQuery != null && rescoreTopN > 0;
+            int shortlistSize = rescore ? Math.max(rescoreTopN, request.maxResults()) : request.maxResults();
+            Filter filter = request.filter();
+
+            PriorityQueue<Scored> shortlist = new PriorityQueue<>(Comparator.comparingDouble(Scored::similarity));
+            for (int position = 0; position < size; position++) {
+                if (removed.get(position)) {
+                    continue;
+                }
+                double similarity = quantizedQuery == null
+                        ? exactSimilarity(query, position)
+                        : quantizedQuery.similarity(codes, position * dimension);
+                if (!rescore && RelevanceScore.fromCosineSimilarity(similarity) < request.minScore()) {
+                    continue;
+                }
+                if (shortlist.size() == shortlistSize && similarity <= shortlist.peek().similarity()) {
+                    continue;
+                }
+                if (filter != null && !matches(position, filter)) {
+                    continue;
+                }
+                shortlist.add(new Scored(position, similarity));
+                if (shortlist.size() > shortlistSize) {
+                    shortlist.poll();
+                }
+            }
+
+            List<Scored> candidates = new ArrayList<>(shortlist.size());
+            for (Scored scored : shortlist) {
+                candidates.add(rescore ? new Scored(scored.position(), exactSimilarity(query, scored.position())) : scored);
+            }
+            candidates.sort(Comparator.comparingDouble(Scored::similarity).reversed());
+
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+            for (Scored candidate : candidates) {
+                double score = RelevanceScore.fromCosineSimilarity(candidate.similarity());
+                if (score < request.minScore() || matches.size() == request.maxResults()) {
+                    break;
+                }
+                int position = candidate.position();
+                matches.add(new EmbeddingMatch<>(score, ids[position], embeddingAt(position), textSegments[position]));
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 向量数据（量化码、可选的原始向量和校准参数）占用的字节数，不包括 id 和文本片段。
+     * Bytes used by the vector data (codes, optional original floats and calibration),
+     * excluding ids and text segments.
+     */
+    public long vectorMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            if (dimension == -1) {
+                return 0;
+            }
+            long bytes = 0;
+            if (isCalibrated()) {
+                bytes += (long) size * dimension + 2L * dimension * Float.BYTES;
+            }
+            if (keepsFloats()) {
+                bytes += (long) size * dimension * Float.BYTES;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isCalibrated() {
+        return minimums != null;
+    }
+
+    private boolean keepsFloats() {
+        return rescoreTopN > 0 || !isCalibrated();
+    }
+
+    /**
+     * 用所有已存储的向量计算每个维度的 min/max，然后量化它们。不重新评分时丢弃原始向量。
+     * Takes the per-dimension min/max of all stored vectors and quantizes them.
+     * The floats are dropped unless they are needed for rescoring.
+     */
+    private void calibrate() {
+        float[] calibratedMinimums = new float[dimension];
+        float[] maximums = new float[dimension];
+        Arrays.fill(calibratedMinimums, Float.POSITIVE_INFINITY);
+        Arrays.fill(maximums, Float.NEGATIVE_INFINITY);
+        for (int position : positionsById.values()) {
+            int offset = position * dimension;
+            for (int d = 0; d < dimension; d++) {
+                calibratedMinimums[d] = Math.min(calibratedMinimums[d], floats[offset + d]);
+                maximums[d] = Math.max(maximums[d], floats[offset + d]);
+            }
+        }
+        scales = new float[dimension];
+        for (int d = 0; d < dimension; d++) {
+            float range = maximums[d] - calibratedMinimums[d];
+            if (range > 0) {
+                scales[d] = range / 255;
+            } else {
+                // 样本中恒定的维度：使用归一化值的完整范围
+                // Constant in the sample: use the full range of a normalized value
+                calibratedMinimums[d] = -1;
+                scales[d] = 2f / 255;
+            }
+        }
+        minimums = calibratedMinimums;
+
+        codes = new byte[ids.length * dimension];
+        for (int position = 0; position < size; position++) {
+            quantize(floats, position * dimension, position * dimension);
+        }
+        if (!keepsFloats()) {
+            floats = new float[0];
+        }
+    }
+
+    /**
+     * 每个维度：x ≈ min + scale * (code + 128)，code ∈ [-128, 127]。
+     * Per dimension: x ≈ min + scale * (code + 128), with code in [-128, 127].
+     */
+    private void quantize(float[] vector, int offset) {
+        quantize(vector, 0, offset);
+    }
+
+    private void quantize(float[] source, int sourceOffset, int offset) {
+        for (int d = 0; d < dimension; d++) {
+            long level = Math.round((source[sourceOffset + d] - minimums[d]) / scales[d]);
+            codes[offset + d] = (byte) (Math.max(0, Math.min(255, level)) - 128);
+        }
+    }
+
+    /**
+     * q·x ≈ Σ q[d]·min[d] + Σ (q[d]·scale[d])·(code[d] + 128)。
+     * 第二项中的 q[d]·scale[d] 再用一个对称的比例因子量化为 int8，因此排序只需整数点积。
+     * q·x ≈ Σ q[d]·min[d] + Σ (q[d]·scale[d])·(code[d] + 128).
+     * The folded query q[d]·scale[d] is quantized to int8 with one symmetric scale,
+     * so ranking only needs the integer dot product Σ k[d]·code[d].
+     */
+    private QuantizedQuery quantizeQuery(float[] query) {
+        float[] folded = new float[dimension];
+        double offset = 0;
+        float maxAbs = 0;
+        for (int d = 0; d < dimension; d++) {
+            offset += query[d] * minimums[d];
+            folded[d] = query[d] * scales[d];
+            maxAbs = Math.max(maxAbs, Math.abs(folded[d]));
+        }
+        float queryScale = maxAbs > 0 ? maxAbs / 127 : 1;
+        byte[] queryCodes = new byte[dimension];
+        long codeSum = 0;
+        for (int d = 0; d < dimension; d++) {
+            queryCodes[d] = (byte) Math.round(folded[d] / queryScale);
+            codeSum += queryCodes[d];
+        }
+        return new QuantizedQuery(queryCodes, queryScale, offset + (double) queryScale * 128 * codeSum);
+    }
+
+    private double exactSimilarity(float[] query, int position) {
+        int offset = position * dimension;
+        double dot = 0;
+        for (int d = 0; d < dimension; d++) {
+            dot += query[d] * floats[offset + d];
+        }
+        return dot;
+    }
+
+    private Embedding embeddingAt(int position) {
+        int offset = position * dimension;
+        float[] vector = new float[dimension];
+        if (keepsFloats()) {
+            System.arraycopy(floats, offset, vector, 0, dimension);
+        } else {
+            for (int d = 0; d < dimension; d++) {
+                vector[d] = minimums[d] + scales[d] * (codes[offset + d] + 128);
+            }
+        }
+        return Embedding.from(vector);
+    }
+
+    private boolean matches(int position, Filter filter) {
+        TextSegment textSegment = textSegments[position];
+        return textSegment != null && filter.test(textSegment.metadata());
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, Math.max(16, ids.length * 2));
+        if (isCalibrated()) {
+            codes = Arrays.copyOf(codes, newCapacity * dimension);
+        }
+        if (keepsFloats()) {
+            floats = Arrays.copyOf(floats, newCapacity * dimension);
+        }
+        ids = Arrays.copyOf(ids, newCapacity);
+        textSegments = Arrays.copyOf(textSegments, newCapacity);
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                normalized[i] = (float) (vector[i] / norm);
+            }
+        }
+        return normalized;
+    }
+
+    private record QuantizedQuery(byte[] codes, float scale, double offset) {
+
+        double similarity(byte[] vectorCodes, int vectorOffset) {
+            int dot = 0;
+            for (int d = 0; d < codes.length; d++) {
+                dot += codes[d] * vectorCodes[vectorOffset + d];
+            }
+            return offset + (double) scale * dot;
+        }
+    }
+
+    private record Scored(int position, double similarity) {
+    }
+
+    public static class Builder {
+
+        private int rescoreTopN;
+        private int calibrationSize = 256;
+
+        /**
+         * 使用原始 float 向量对前 N 个候选重新评分。0 表示不保留原始向量（默认）。
+         * Rescores the top N candidates with the original floats.
+         * 0 (the default) means the original floats are not kept at all.
+         */
+        public Builder rescoreTopN(int rescoreTopN) {
+            this.rescoreTopN = rescoreTopN;
+            return this;
+        }
+
+        /**
+         * 用于校准的向量数，默认 256。在此之前，向量以 float 存储并精确搜索。
+         * How many vectors the per-dimension ranges are taken from, 256 by default.
+         * Until that many are stored, they are kept as floats and searched exactly.
+         */
+        public Builder calibrationSize(int calibrationSize) {
+            this.calibrationSize = calibrationSize;
+            return this;
+        }
+
+        public QuantizedEmbeddingStore build() {
+            return new QuantizedEmbeddingStore(this);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package shared.store;
+
+/**
+ * 标量相似度内核（无 SIMD）
+ * Plain Java loops, used when the Vector API is not available.
+ */
+class ScalarSimilarityKernel implements SimilarityKernel {
+
+    @Override
+    public void dotProducts(float[] query, float[] block, int from, int count, float[] scores) {
+        int dimension = query.length;
+        for (int i = 0; i < count; i++) {
+            int offset = (from + i) * dimension;
+            float dot = 0;
+            for (int d = 0; d < dimension; d++) {
+                dot += query[d] * block[offset + d];
+            }
+            scores[i] = dot;
+        }
+    }
+
+    @Override
+    public void cosineSimilarities(float[] query, float[] block, int from, int count, float[] scores) {
+        int dimension = query.length;
+        float queryNorm = 0;
+        for (float value : query) {
+            queryNorm += value * value;
+        }
+        for (int i = 0; i < count; i++) {
+            int offset = (from + i) * dimension;
+            float dot = 0;
+            float norm = 0;
+            for (int d = 0; d < dimension; d++) {
+                float value = block[offset + d];
+                dot += query[d] * value;
+                norm += value * value;
+            }
+            scores[i] = cosine(dot, queryNorm, norm);
+        }
+    }
+
+    @Override
+    public void squaredL2Distances(float[] query, float[] block, int from, int count, float[] scores) {
+        int dimension = query.length;
+        for (int i = 0; i < count; i++) {
+            int offset = (from + i) * dimension;
+            float sum = 0;
+            for (int d = 0; d < dimension; d++) {
+                float difference = query[d] - block[offset + d];
+                sum += difference * difference;
+            }
+            scores[i] = sum;
+        }
+    }
+
+    static float cosine(float dot, float queryNorm, float norm) {
+        double denominator = Math.sqrt((double) queryNorm * norm);
+        return denominator == 0 ? 0 : (float) (dot / denominator);
+    }
+}
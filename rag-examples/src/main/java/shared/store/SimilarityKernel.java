@@ -0,0 +1,52 @@
+package shared.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 相似度计算内核
+ * Computes similarities between one query and a block of vectors stored contiguously in a {@code float[]}
+ * (vector {@code i} occupies {@code block[i * dimension .. (i + 1) * dimension)}).
+ * <br>
+ * {@link #create()} returns a kernel built on the JDK Vector API ({@code jdk.incubator.vector})
+ * when the module is available (run with {@code --add-modules=jdk.incubator.vector}),
+ * and a plain scalar implementation otherwise.
+ */
+public interface SimilarityKernel {
+
+    /**
+     * 点积：scores[i] = query · block[from + i]
+     * Dot products: {@code scores[i] = query · vector(from + i)} for {@code i} in {@code [0, count)}.
+     */
+    void dotProducts(float[] query, float[] block, int from, int count, float[] scores);
+
+    /**
+     * 余弦相似度：scores[i] = cos(query, block[from + i])
+     * Cosine similarities: {@code scores[i] = cos(query, vector(from + i))} for {@code i} in {@code [0, count)}.
+     */
+    void cosineSimilarities(float[] query, float[] block, int from, int count, float[] scores);
+
+    /**
+     * 欧氏距离的平方：scores[i] = |query - block[from + i]|²
+     * Squared Euclidean distances: {@code scores[i] = |query - vector(from + i)|²} for {@code i} in {@code [0, count)}.
+     */
+    void squaredL2Distances(float[] query, float[] block, int from, int count, float[] scores);
+
+    /**
+     * 如果可用，返回基于 Vector API 的 SIMD 内核，否则返回标量内核。
+     * Returns the SIMD kernel backed by the Vector API if it is available, the scalar kernel otherwise.
+     */
+    static SimilarityKernel create() {
+        Logger log = LoggerFactory.getLogger(SimilarityKernel.class);
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return new VectorizedSimilarityKernel();
+            } catch (LinkageError e) {
+                log.warn("Vector API is not usable, falling back to the scalar similarity kernel", e);
+            }
+        } else {
+            log.debug("jdk.incubator.vector is not available, using the scalar similarity kernel");
+        }
+        return new ScalarSimilarityKernel();
+    }
+}
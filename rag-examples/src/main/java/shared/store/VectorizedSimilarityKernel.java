@@ -0,0 +1,122 @@
+package shared.store;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 JDK Vector API 的 SIMD 相似度内核
+ * SIMD kernel built on the JDK Vector API. Four vectors of the block are scored per pass,
+ * so every lane of the query is loaded once per four dot products.
+ * <br>
+ * Only referenced from {@link SimilarityKernel#create()} after checking that {@code jdk.incubator.vector}
+ * is present, so the rest of the code works without the module.
+ */
+class VectorizedSimilarityKernel implements SimilarityKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void dotProducts(float[] query, float[] block, int from, int count, float[] scores) {
+        int dimension = query.length;
+        int bound = SPECIES.loopBound(dimension);
+        int i = 0;
+        for (; i + 4 <= count; i += 4) {
+            int o0 = (from + i) * dimension;
+            int o1 = o0 + dimension;
+            int o2 = o1 + dimension;
+            int o3 = o2 + dimension;
+            FloatVector acc0 = FloatVector.zero(SPECIES);
+            FloatVector acc1 = FloatVector.zero(SPECIES);
+            FloatVector acc2 = FloatVector.zero(SPECIES);
+            FloatVector acc3 = FloatVector.zero(SPECIES);
+            int d = 0;
+            for (; d < bound; d += SPECIES.length()) {
+                FloatVector q = FloatVector.fromArray(SPECIES, query, d);
+                acc0 = q.fma(FloatVector.fromArray(SPECIES, block, o0 + d), acc0);
+                acc1 = q.fma(FloatVector.fromArray(SPECIES, block, o1 + d), acc1);
+                acc2 = q.fma(FloatVector.fromArray(SPECIES, block, o2 + d), acc2);
+                acc3 = q.fma(FloatVector.fromArray(SPECIES, block, o3 + d), acc3);
+            }
+            float dot0 = acc0.reduceLanes(VectorOperators.ADD);
+            float dot1 = acc1.reduceLanes(VectorOperators.ADD);
+            float dot2 = acc2.reduceLanes(VectorOperators.ADD);
+            float dot3 = acc3.reduceLanes(VectorOperators.ADD);
+            for (; d < dimension; d++) {
+                float q = query[d];
+                dot0 += q * block[o0 + d];
+                dot1 += q * block[o1 + d];
+                dot2 += q * block[o2 + d];
+                dot3 += q * block[o3 + d];
+            }
+            scores[i] = dot0;
+            scores[i + 1] = dot1;
+            scores[i + 2] = dot2;
+            scores[i + 3] = dot3;
+        }
+        for (; i < count; i++) {
+            scores[i] = dot(query, block, (from + i) * dimension, bound);
+        }
+    }
+
+    @Override
+    public void cosineSimilarities(float[] query, float[] block, int from, int count, float[] scores) {
+        int dimension = query.length;
+        int bound = SPECIES.loopBound(dimension);
+        float queryNorm = dot(query, query, 0, bound);
+        for (int i = 0; i < count; i++) {
+            int offset = (from + i) * dimension;
+            FloatVector dotAcc = FloatVector.zero(SPECIES);
+            FloatVector normAcc = FloatVector.zero(SPECIES);
+            int d = 0;
+            for (; d < bound; d += SPECIES.length()) {
+                FloatVector v = FloatVector.fromArray(SPECIES, block, offset + d);
+                dotAcc = FloatVector.fromArray(SPECIES, query, d).fma(v, dotAcc);
+                normAcc = v.fma(v, normAcc);
+            }
+            float dot = dotAcc.reduceLanes(VectorOperators.ADD);
+            float norm = normAcc.reduceLanes(VectorOperators.ADD);
+            for (; d < dimension; d++) {
+                float value = block[offset + d];
+                dot += query[d] * value;
+                norm += value * value;
+            }
+            scores[i] = ScalarSimilarityKernel.cosine(dot, queryNorm, norm);
+        }
+    }
+
+    @Override
+    public void squaredL2Distances(float[] query, float[] block, int from, int count, float[] scores) {
+        int dimension = query.length;
+        int bound = SPECIES.loopBound(dimension);
+        for (int i = 0; i < count; i++) {
+            int offset = (from + i) * dimension;
+            FloatVector acc = FloatVector.zero(SPECIES);
+            int d = 0;
+            for (; d < bound; d += SPECIES.length()) {
+                FloatVector difference = FloatVector.fromArray(SPECIES, query, d)
+                        .sub(FloatVector.fromArray(SPECIES, block, offset + d));
+                acc = difference.fma(difference, acc);
+            }
+            float sum = acc.reduceLanes(VectorOperators.ADD);
+            for (; d < dimension; d++) {
+                float difference = query[d] - block[offset + d];
+                sum += difference * difference;
+            }
+            scores[i] = sum;
+        }
+    }
+
+    private static float dot(float[] a, float[] b, int offset, int bound) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int d = 0;
+        for (; d < bound; d += SPECIES.length()) {
+            acc = FloatVector.fromArray(SPECIES, a, d).fma(FloatVector.fromArray(SPECIES, b, offset + d), acc);
+        }
+        float dot = acc.reduceLanes(VectorOperators.ADD);
+        for (; d < a.length; d++) {
+            dot += a[d] * b[offset + d];
+        }
+        return dot;
+    }
+}
@@ -0,0 +1,86 @@
+package shared.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.TokenCountEstimator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 缓存令牌计数切分器的测试
+ */
+class CachedTokenDocumentSplitterTest {
+
+    /**
+     * 每个单词和每个标点符号计为一个令牌
+     * Counts every word and every punctuation mark as one token
+     */
+    private static final TokenCountEstimator WORD_COUNT_ESTIMATOR = new TokenCountEstimator() {
+
+        private final Pattern token = Pattern.compile("\\p{L}+|\\p{N}+|[^\\s\\p{L}\\p{N}]");
+
+        @Override
+        public int estimateTokenCountInText(String text) {
+            return (int) token.matcher(text).results().count();
+        }
+
+        @Override
+        public int estimateTokenCountInMessage(ChatMessage message) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int estimateTokenCountInMessages(Iterable<ChatMessage> messages) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    @Test
+    void should_split_at_sentence_boundaries() {
+
+        CachedTokenDocumentSplitter splitter = new CachedTokenDocumentSplitter(8, WORD_COUNT_ESTIMATOR);
+
+        List<TextSegment> segments = splitter.split(Document.from(
+                "Hello there my friend. How are you doing today? I am fine thanks."));
+
+        assertThat(segments).extracting(TextSegment::text).containsExactly(
+                "Hello there my friend.",
+                "How are you doing today?",
+                "I am fine thanks.");
+    }
+
+    @Test
+    void should_split_at_line_boundaries_of_indented_lines() {
+
+        CachedTokenDocumentSplitter splitter = new CachedTokenDocumentSplitter(4, WORD_COUNT_ESTIMATOR);
+
+        List<TextSegment> segments = splitter.split(Document.from(
+                "first line here\n    indented second line\n    indented third line"));
+
+        assertThat(segments).extracting(TextSegment::text).containsExactly(
+                "first line here",
+                "indented second line",
+                "indented third line");
+    }
+
+    @Test
+    void should_split_at_paragraph_boundaries_and_keep_segments_within_limit() {
+
+        CachedTokenDocumentSplitter splitter = new CachedTokenDocumentSplitter(10, WORD_COUNT_ESTIMATOR);
+
+        List<TextSegment> segments = splitter.split(Document.from(
+                "One two three. Four five six.\n\n  Seven eight nine ten eleven twelve thirteen fourteen fifteen sixteen"));
+
+        assertThat(segments).extracting(TextSegment::text).containsExactly(
+                "One two three. Four five six.",
+                "Seven eight nine ten eleven twelve thirteen fourteen fifteen sixteen");
+        assertThat(segments).allSatisfy(segment ->
+                assertThat(WORD_COUNT_ESTIMATOR.estimateTokenCountInText(segment.text())).isLessThanOrEqualTo(10));
+        assertThat(segments).extracting(segment -> segment.metadata().getString("index")).containsExactly("0", "1");
+    }
+}